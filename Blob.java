@@ -6,7 +6,9 @@ import java.io.Serializable;
 
 import static gitlet.Utils.*;
 
-/** A class for copying user-provided files.
+/** A class for copying user-provided files. New contents are kept by
+ * BlobStore; this class remains so blobs serialized by earlier versions
+ * of Gitlet can still be read.
  *
  * @author Hannah Verdonk */
 public class Blob implements Serializable {
@@ -37,5 +39,8 @@ public class Blob implements Serializable {
      * provided file's contents to SHA1(). */
     private String hash;
 
+    /** Pinned so blobs written by earlier versions still read. */
+    private static final long serialVersionUID = -4586519420739072157L;
+
 
 }
@@ -0,0 +1,318 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** Content-addressed storage for file contents. Every blob lives in
+ * the blobs directory under the SHA-1 of its contents, written as a
+ * small header followed by the contents, deflated at
+ * Utils.COMPRESSION_LEVEL, so files are hashed, stored and read back
+ * as streams instead of whole serialized byte arrays. Blobs written
+ * by older versions of Gitlet (serialized Blob objects, or stored
+ * uncompressed) are still readable.
+ * @author Hannah Verdonk */
+class BlobStore {
+
+    /** Stores the contents of file F, returning their SHA1 hashcode.
+     *  The file is hashed while it is copied, so it is read only once
+     *  and never held in memory as a whole. */
+    @SuppressWarnings("try")
+    static String put(File f) {
+        File tmp = tempFile();
+        try (Trace.Span s = Trace.begin("store blob");
+             FileChannel out = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.WRITE);
+             InputStream in = new FileInputStream(f)) {
+            MessageDigest md = newSha1();
+            out.position(HEADER_SIZE);
+            Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+            OutputStream body = body(out, deflater);
+            byte[] buf = new byte[BUFFER_SIZE];
+            long length = 0;
+            try {
+                for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                    md.update(buf, 0, n);
+                    body.write(buf, 0, n);
+                    length += n;
+                }
+                finish(body);
+                Trace.count(Trace.BYTES_HASHED, length);
+            } finally {
+                deflater.end();
+            }
+            out.write(header(length), 0);
+            return install(tmp, hex(md.digest()));
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores CONTENTS as a blob, returning their SHA1 hashcode. */
+    static String put(byte[] contents) {
+        String sha = sha1(contents);
+        if (!exists(sha)) {
+            writeLoose(sha, contents);
+        }
+        return sha;
+    }
+
+    /** Writes CONTENTS, whose SHA1 hashcode is SHA, as a loose blob,
+     *  even if a pack holds them already. Returns the blob's file. */
+    @SuppressWarnings("try")
+    static File writeLoose(String sha, byte[] contents) {
+        File tmp = tempFile();
+        try (Trace.Span s = Trace.begin("store blob");
+             FileChannel out = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.WRITE)) {
+            out.write(header(contents.length));
+            Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+            try {
+                OutputStream body = body(out, deflater);
+                body.write(contents);
+                finish(body);
+            } finally {
+                deflater.end();
+            }
+            return move(tmp, sha);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the SHA1 hashcode the contents of file F would be stored
+     *  under, reading F as a stream. */
+    @SuppressWarnings("try")
+    static String hash(File f) {
+        try (Trace.Span s = Trace.begin("hash file");
+             InputStream in = new FileInputStream(f)) {
+            MessageDigest md = newSha1();
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                Trace.count(Trace.BYTES_HASHED, n);
+            }
+            return hex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if a blob named SHA has been stored, loose or in
+     *  a pack. */
+    static boolean exists(String sha) {
+        return blobFile(sha).isFile() || PackFile.contains(sha);
+    }
+
+    /** Returns a stream over the contents of the blob named SHA. The
+     *  caller is responsible for closing it. */
+    static InputStream open(String sha) {
+        File f = blobFile(sha);
+        if (!f.isFile()) {
+            InputStream packed = PackFile.open(sha);
+            if (packed != null) {
+                return packed;
+            }
+        }
+        try {
+            int format = format(f);
+            if (format == LEGACY) {
+                Blob b = readObject(f, Blob.class);
+                return new ByteArrayInputStream(b.fileContents());
+            }
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            in.skipBytes(HEADER_SIZE);
+            if (format == FORMAT_DEFLATE) {
+                return new InflaterInputStream(in, new Inflater(),
+                                               BUFFER_SIZE) {
+                    /** Closes the file and frees the inflater, which
+                     *  closing the stream alone would not, since it
+                     *  was passed in. */
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                };
+            }
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the blob named SHA, which may not be
+     *  modified. Only meant for callers that really need the whole
+     *  file, such as merge. */
+    @SuppressWarnings("try")
+    static byte[] read(String sha) {
+        byte[] contents = (byte[]) ObjectCache.get(CACHE_KEY + sha);
+        if (contents != null) {
+            return contents;
+        }
+        Trace.count(Trace.OBJECTS_READ, 1);
+        try (Trace.Span s = Trace.begin("read blob");
+             InputStream in = open(sha)) {
+            contents = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectCache.put(CACHE_KEY + sha, contents,
+                        ObjectCache.OBJECT_BYTES + contents.length);
+        return contents;
+    }
+
+    /** Writes the contents of the blob named SHA to file DEST, byte for
+     *  byte, creating or overwriting it as needed. */
+    @SuppressWarnings("try")
+    static void copyTo(String sha, File dest) {
+        File f = blobFile(sha);
+        if (dest.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        byte[] cached = (byte[]) ObjectCache.get(CACHE_KEY + sha);
+        Trace.count(Trace.OBJECTS_READ, cached == null ? 1 : 0);
+        try (Trace.Span s = Trace.begin("copy blob")) {
+            if (cached != null) {
+                Files.write(dest.toPath(), cached);
+            } else if (f.isFile() && format(f) == FORMAT_RAW) {
+                try (FileChannel in = FileChannel.open(f.toPath());
+                     FileChannel out = FileChannel.open(dest.toPath(),
+                             StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE,
+                             StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long pos = HEADER_SIZE;
+                    long end = in.size();
+                    while (pos < end) {
+                        pos += in.transferTo(pos, end - pos, out);
+                    }
+                }
+            } else {
+                try (InputStream in = open(sha);
+                     OutputStream out = Files.newOutputStream(
+                             dest.toPath())) {
+                    in.transferTo(out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the file holding the blob named SHA. */
+    static File blobFile(String sha) {
+        return ObjectPath.of(Main.BLOBS, sha);
+    }
+
+    /** Returns the format version byte of blob file F, or LEGACY if
+     *  it is a serialized Blob rather than starting with a header. */
+    private static int format(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                return LEGACY;
+            }
+            return in.read();
+        }
+    }
+
+    /** Returns the header for a blob of LENGTH bytes, stored in the
+     *  format COMPRESSION_LEVEL calls for. */
+    private static ByteBuffer header(long length) {
+        byte format = COMPRESSION_LEVEL == 0 ? FORMAT_RAW : FORMAT_DEFLATE;
+        ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+        h.put(MAGIC).put(format).putLong(length).flip();
+        return h;
+    }
+
+    /** Returns a stream writing blob contents to OUT at its current
+     *  position, compressed with DEFLATER if compression is on. */
+    private static OutputStream body(FileChannel out, Deflater deflater) {
+        OutputStream raw = Channels.newOutputStream(out);
+        if (COMPRESSION_LEVEL == 0) {
+            return raw;
+        }
+        return new DeflaterOutputStream(raw, deflater, BUFFER_SIZE);
+    }
+
+    /** Flushes everything written to BODY, without closing the channel
+     *  underneath it. */
+    private static void finish(OutputStream body) throws IOException {
+        if (body instanceof DeflaterOutputStream) {
+            ((DeflaterOutputStream) body).finish();
+        }
+        body.flush();
+    }
+
+    /** Returns a fresh, empty temporary file in the blobs directory. */
+    private static File tempFile() {
+        try {
+            return File.createTempFile("tmp-", null, new File(Main.BLOBS));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Moves the finished temporary blob TMP to its final name SHA,
+     *  discarding it if that blob already exists. Returns SHA. */
+    private static String install(File tmp, String sha) throws IOException {
+        if (exists(sha)) {
+            tmp.delete();
+        } else {
+            move(tmp, sha);
+        }
+        return sha;
+    }
+
+    /** Moves the finished temporary blob TMP to its final name SHA,
+     *  returning the blob's file. */
+    private static File move(File tmp, String sha) throws IOException {
+        Trace.count(Trace.OBJECTS_WRITTEN, 1);
+        File blob = ObjectPath.create(Main.BLOBS, sha);
+        Files.move(tmp.toPath(), blob.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+        LockFile.written(blob);
+        return blob;
+    }
+
+    /** Prefix of the keys of blobs in the ObjectCache. */
+    private static final String CACHE_KEY = "blob ";
+
+    /** Marks a blob file written by this store. */
+    private static final byte[] MAGIC = {'g', 'b', 'l', 'b'};
+
+    /** Format of a blob written by an earlier version of Gitlet as a
+     *  serialized Blob. */
+    private static final int LEGACY = 0;
+
+    /** Size in bytes of a blob header: magic, version and length. */
+    static final int HEADER_SIZE = MAGIC.length + 1 + Long.BYTES;
+
+    /** Size of the buffer used when streaming file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+}
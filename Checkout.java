@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** Moves the working directory from one commit's files to another's.
+ * Only files whose blobs differ between the two commits, or that have
+ * been changed in the working directory since, are written; they are
+ * written in parallel, byte for byte, each to a temporary file that is
+ * then renamed into place, so an interrupted checkout leaves every
+ * file holding either its old or its new contents.
+ * @author Hannah Verdonk */
+class Checkout {
+
+    /** Replaces the files of CURRENT, a map of file names to blob
+     *  shaCodes that the working directory reflects, with those of
+     *  TARGET. */
+    static void materialize(Map<String, String> current,
+                            Map<String, String> target) {
+        String cwd = System.getProperty("user.dir");
+        List<String> toWrite = new ArrayList<>();
+        for (Map.Entry<String, String> e : target.entrySet()) {
+            String name = e.getKey();
+            File dest = new File(cwd + Main.S + name);
+            if (!e.getValue().equals(current.get(name))
+                    || !StatCache.unchanged(dest, name, e.getValue())) {
+                toWrite.add(name);
+            }
+        }
+
+        Workers.map(toWrite, name -> {
+            write(name, target.get(name));
+            return null;
+        });
+
+        for (String name : current.keySet()) {
+            if (!target.containsKey(name)) {
+                deleteWorkingFile(name);
+            }
+        }
+    }
+
+    /** Writes the contents of the blob named SHA to the working file
+     *  NAME, through a temporary file renamed into place. */
+    @SuppressWarnings("try")
+    static void write(String name, String sha) {
+        Trace.count(Trace.FILES_WRITTEN, 1);
+        try (Trace.Span s = Trace.begin("write file")) {
+            replace(name, sha);
+        }
+    }
+
+    /** Writes the blob SHA to the working file NAME as write does,
+     *  untimed. */
+    private static void replace(String name, String sha) {
+        File dest = new File(System.getProperty("user.dir") + Main.S + name);
+        File tmp;
+        try {
+            tmp = File.createTempFile("checkout-", null,
+                                      new File(Main.GITLET));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            BlobStore.copyTo(sha, tmp);
+            dest.getParentFile().mkdirs();
+            try {
+                Files.move(tmp.toPath(), dest.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(tmp.toPath(), dest.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            tmp.delete();
+        }
+        StatCache.record(dest, name, sha);
+    }
+
+}
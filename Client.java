@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A drop-in replacement for Main that hands each command to the
+ * repository's Daemon if one is running, and otherwise runs it itself.
+ * Usage is the same: java gitlet.Client ARGS. It prints what the
+ * command printed and exits with the status it exited with.
+ * @author Hannah Verdonk */
+public class Client {
+
+    /** Runs the command in ARGS, through the daemon if possible. */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals("daemon")) {
+            Main.main(args);
+            return;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET));
+        } catch (IOException excp) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(ch));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(ch));
+            byte[] stdout = new byte[in.readInt()];
+            in.readFully(stdout);
+            byte[] stderr = new byte[in.readInt()];
+            in.readFully(stderr);
+            status = in.readInt();
+            System.out.write(stdout);
+            System.out.flush();
+            System.err.write(stderr);
+            System.err.flush();
+        } catch (IOException excp) {
+            System.err.println("gitlet: lost the daemon: "
+                               + excp.getMessage());
+            status = 1;
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** The daemon's socket, as in Daemon.SOCKET; spelled out so the
+     *  client loads no more of Gitlet than it needs. */
+    private static final String SOCKET = ".gitlet/daemon.sock";
+
+}
@@ -1,54 +1,62 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static gitlet.Utils.*;
 
 /** Class for creating commit objects, the things that hold
  * blobs of data and their pointers.
+ *
+ * A commit is stored in a fixed, canonical binary form, and its
+ * shaCode is the SHA1 hash of exactly those bytes: the magic bytes
+ * "gcmt" and a version byte; the 20 bytes of the root tree's id; the
+ * number of parents (0, 1 or 2) and the 20 bytes of each, first parent
+ * first; the time as seconds since the epoch (read as UTC) and
+ * nanoseconds, a long and an int; and the length of the UTF-8 message,
+ * an int, followed by the message. Numbers are big-endian. Files are
+ * not listed; the tree holds them, sorted by name. Commits written by
+ * earlier versions of Gitlet as serialized Java objects, whose ids were
+ * computed otherwise, are still read, and keep their ids.
  *  @author Hannah Verdonk */
 public class Commit implements Serializable {
 
     /** Stores a copy of every tracked/staged file
      * as a commit object.  MSG is the commit
      * message entered by the user. PARENTSHA is
-     * the pointer to this commit's parent. */
-    Commit(String msg, String parentSha) {
+     * the pointer to this commit's parent. STAGED is
+     * the index of changes to commit. */
+    Commit(String msg, String parentSha, Index staged) {
         message = msg;
         time = LocalDateTime.now();
         parent = parentSha;
         secondParent = null;
 
-        data = getParent().data();
-        if (!getStaged().index().isEmpty()) {
-            if (data == null) {
-                data = getStaged().index();
-            } else {
-                data.putAll(getStaged().index());
-            }
-        }
-
-        for (String filename : getRemoved().removed()) {
-            if (data.containsKey(filename)) {
-                data.remove(filename);
-            }
+        HashMap<String, String> changes = new HashMap<>(staged.added());
+        for (String filename : staged.removed()) {
+            changes.put(filename, null);
         }
+        tree = Tree.update(getParent().treeSha(), changes);
 
-        Object[] tmp = data.values().toArray();
-        String[] toSerialize = Arrays.copyOf(tmp, tmp.length, String[].class);
-
-        String[] total = new String[toSerialize.length + 3];
-
-        total[0] = message;
-        total[1] = time.toString();
-        total[2] = parent;
-        System.arraycopy(toSerialize, 0, total, 3, toSerialize.length);
-
-        sha = Utils.sha1((Object[]) total);
+        sha = sha1(encode());
     }
 
     /** Builds the initial commit. */
@@ -57,12 +65,8 @@ public class Commit implements Serializable {
         time = LocalDateTime.of(YEAR, 1, 1, 0, 0);
         parent = null;
         secondParent = null;
-        data = new HashMap<>();
-        sha = sha1(message, time.toString());
-
-        File removed = new File(Main.GITLET + "removed");
-        RemovedSet r = new RemovedSet();
-        Utils.writeObject(removed, r);
+        tree = Tree.build(new HashMap<>());
+        sha = sha1(encode());
     }
 
     /** Builds a merge commit. MSG is which two
@@ -75,52 +79,161 @@ public class Commit implements Serializable {
         time = LocalDateTime.now();
         parent = parentSha;
         secondParent = secondParentSha;
-        data = blobfiles;
+        tree = Tree.build(blobfiles);
 
-        Object[] tmp = data.values().toArray();
-        String[] toSerialize = Arrays.copyOf(tmp, tmp.length, String[].class);
+        sha = sha1(encode());
+    }
 
-        String[] total = new String[toSerialize.length + 3];
+    /** A commit decoded from its stored form, named SHA, of the tree
+     * TREESHA, with parents PARENTSHA and SECONDPARENTSHA, made at
+     * TIME with message MSG. */
+    private Commit(String sha, String treeSha, String parentSha,
+                   String secondParentSha, LocalDateTime time, String msg) {
+        this.sha = sha;
+        tree = treeSha;
+        parent = parentSha;
+        secondParent = secondParentSha;
+        this.time = time;
+        message = msg;
+    }
 
-        total[0] = message;
-        total[1] = time.toString();
-        total[2] = parent;
-        System.arraycopy(toSerialize, 0, total, 3, toSerialize.length);
+    /** Returns my stored form. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.write(PackFile.unhex(tree));
+            out.writeByte(parent == null ? 0 : secondParent == null ? 1 : 2);
+            if (parent != null) {
+                out.write(PackFile.unhex(parent));
+            }
+            if (secondParent != null) {
+                out.write(PackFile.unhex(secondParent));
+            }
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+            byte[] m = message.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(m.length);
+            out.write(m);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the commit whose stored form is CONTENTS, which may also
+     * be a commit serialized by an earlier version of Gitlet. */
+    static Commit decode(byte[] contents) {
+        if (contents.length < MAGIC.length + 1 || !Arrays.equals(
+                contents, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return deserialize(contents, Commit.class);
+        }
+        if (contents[MAGIC.length] != VERSION) {
+            throw new IllegalArgumentException("unknown commit format "
+                                               + contents[MAGIC.length]);
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(contents);
+            in.position(MAGIC.length + 1);
+            String treeSha = id(in);
+            int parents = in.get();
+            if (parents < 0 || parents > 2) {
+                throw new IllegalArgumentException("malformed commit");
+            }
+            String first = parents > 0 ? id(in) : null;
+            String second = parents > 1 ? id(in) : null;
+            LocalDateTime t = LocalDateTime.ofEpochSecond(in.getLong(),
+                    in.getInt(), ZoneOffset.UTC);
+            int length = in.getInt();
+            if (length != in.remaining()) {
+                throw new IllegalArgumentException("malformed commit");
+            }
+            String msg = new String(contents, in.position(), length,
+                                    StandardCharsets.UTF_8);
+            return new Commit(sha1(contents), treeSha, first, second, t,
+                              msg);
+        } catch (BufferUnderflowException | DateTimeException excp) {
+            throw new IllegalArgumentException("malformed commit");
+        }
+    }
 
-        sha = Utils.sha1((Object[]) total);
+    /** Returns the id held in the next ID_BYTES bytes of IN. */
+    private static String id(ByteBuffer in) {
+        byte[] id = new byte[ID_BYTES];
+        in.get(id);
+        return hex(id);
     }
 
-    /** Returns the deserialized Stage object
-     * so it's contents are accessible. */
-    static Stage getStaged() {
-        File stage = new File(Main.STAGE);
-        return readObject(stage, Stage.class);
+    /** Stores me in the commits directory. */
+    void write() {
+        writeCompressed(ObjectPath.create(Main.COMMITS, sha), encode());
     }
 
     /** Returns the deserialized parent commit,
      * making it's contents accessible. */
     Commit getParent() {
-        File parentCommit = new File(Main.COMMITS + Main.S + this.parent());
-        return readObject(parentCommit, Commit.class);
+        return read(this.parent());
     }
 
-    /** Returns the deserialized HashSet of
-     * all files to be removed from tracking. */
-    static RemovedSet getRemoved() {
-        File removed = new File(Main.GITLET + Main.S + "removed");
-        return readObject(removed, RemovedSet.class);
+    /** Returns the commit named SHA, whether it is stored loose in
+     * the commits directory or in a pack. */
+    @SuppressWarnings("try")
+    static Commit read(String sha) {
+        Commit c = (Commit) ObjectCache.get(CACHE_KEY + sha);
+        if (c != null) {
+            return c;
+        }
+        Trace.count(Trace.OBJECTS_READ, 1);
+        try (Trace.Span s = Trace.begin("read commit")) {
+            File loose = ObjectPath.of(Main.COMMITS, sha);
+            byte[] contents;
+            if (loose.exists()) {
+                try (InputStream in = openObject(loose)) {
+                    contents = in.readAllBytes();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            } else {
+                contents = PackFile.read(sha);
+                if (contents == null) {
+                    throw new IllegalArgumentException("no commit " + sha);
+                }
+            }
+            c = decode(contents);
+        }
+        long weight = ObjectCache.OBJECT_BYTES + 2 * c.message.length();
+        if (c.data != null) {
+            weight += (long) ObjectCache.ENTRY_BYTES * c.data.size();
+        }
+        ObjectCache.put(CACHE_KEY + sha, c, weight);
+        return c;
+    }
+
+    /** Returns true if a commit named SHA has been stored. */
+    static boolean exists(String sha) {
+        return ObjectPath.exists(Main.COMMITS, sha)
+                || PackFile.contains(sha);
+    }
+
+    /** Returns the shaCodes of every stored commit, loose or packed,
+     * in sorted order. */
+    static List<String> allIds() {
+        TreeSet<String> ids = new TreeSet<>(ObjectPath.list(Main.COMMITS));
+        ids.addAll(PackFile.ids(PackFile.COMMIT));
+        return new ArrayList<>(ids);
     }
 
     /** Returns the commit object at the head of the
      * current branch. */
     static Commit getLastCommit() {
-        File active = new File(Main.BRANCHES + Main.S + "current");
-        String currBranchName = readContentsAsString(active);
-        File currBranch = new File(Main.BRANCHES + Main.S + currBranchName);
-        String lastCommitName = readContentsAsString(currBranch);
+        return read(getLastCommitSha());
+    }
 
-        File lastCommit = new File(Main.COMMITS + Main.S + lastCommitName);
-        return readObject(lastCommit, Commit.class);
+    /** Returns the shaCode of the commit at the head of the
+     * current branch. */
+    static String getLastCommitSha() {
+        return Refs.get(Refs.current());
     }
 
 
@@ -152,12 +265,96 @@ public class Commit implements Serializable {
         return this.message;
     }
 
-    /** Returns the ArrayList<String> of blob shaCodes
-     * stored by this commit. */
-    public HashMap<String, String> data() {
-        return this.data;
+    /** Returns the mapping of file paths to blob shaCodes
+     * stored by this commit, which may not be modified. */
+    public Map<String, String> data() {
+        if (this.data != null) {
+            return Collections.unmodifiableMap(this.data);
+        }
+        return Tree.flatten(this.tree);
+    }
+
+    /** Returns the shaCode of this commit's root tree. Commits
+     * made before trees existed get one built from their files. */
+    public String treeSha() {
+        if (this.tree == null) {
+            this.tree = Tree.build(this.data);
+        }
+        return this.tree;
+    }
+
+    /** Returns true if my shaCode is the hash of my contents, and, if I
+     * was decoded from my stored form, that form was canonical. Commits
+     * made before trees existed were hashed differently, and are taken
+     * at their word; serialized commits made since are checked against
+     * the hash of their fields they were named by. */
+    boolean hashMatches() {
+        if (this.data != null) {
+            return true;
+        } else if (encoded) {
+            return sha1(encode()).equals(this.sha);
+        }
+        String expected;
+        if (this.parent == null) {
+            expected = sha1(message, time.toString());
+        } else if (this.secondParent == null) {
+            expected = sha1(message, time.toString(), parent, tree);
+        } else {
+            expected = sha1(message, time.toString(), parent,
+                            secondParent, tree);
+        }
+        return expected.equals(this.sha);
+    }
+
+    /** Adds the root tree this commit links to to TREES, or, if it was
+     * made before trees existed, the blobs it links to to BLOBS. */
+    void links(Set<String> trees, Set<String> blobs) {
+        if (this.data != null) {
+            blobs.addAll(this.data.values());
+        }
+        if (this.tree != null) {
+            trees.add(this.tree);
+        }
+    }
+
+    /** Adds the trees and blobs that make up this commit's snapshot to
+     * TREES and BLOBS, without building a tree for a commit made
+     * before trees existed. */
+    void reachable(Set<String> trees, Set<String> blobs) {
+        if (this.data != null) {
+            blobs.addAll(this.data.values());
+        }
+        if (this.tree != null) {
+            Tree.reachable(this.tree, trees, blobs);
+        }
     }
 
+    /** Adds to CHANGES every file path whose blob differs between my
+     * first parent (or an empty snapshot, if I have none) and me,
+     * mapped to {blob in the parent, blob in me} as in Tree.diff. Only
+     * the trees along the changed paths are read, unless either commit
+     * was made before trees existed. */
+    void changes(Map<String, String[]> changes) {
+        Commit p = this.parent == null ? null : read(this.parent);
+        if (this.data == null && (p == null || p.data == null)) {
+            Tree.diff(p == null ? null : p.tree, this.tree, changes);
+            return;
+        }
+        Map<String, String> before =
+            p == null ? Collections.emptyMap() : p.data();
+        Map<String, String> after = data();
+        for (Map.Entry<String, String> e : after.entrySet()) {
+            String old = before.get(e.getKey());
+            if (!e.getValue().equals(old)) {
+                changes.put(e.getKey(), new String[] {old, e.getValue()});
+            }
+        }
+        for (Map.Entry<String, String> e : before.entrySet()) {
+            if (!after.containsKey(e.getKey())) {
+                changes.put(e.getKey(), new String[] {e.getValue(), null});
+            }
+        }
+    }
 
 
     /** Time the commit was made. */
@@ -177,10 +374,33 @@ public class Commit implements Serializable {
      * created by the merge command. */
     private String secondParent;
 
-    /** Mapping of file names to blob objects
-     * stored by this commit. */
+    /** Mapping of file names to blob objects stored
+     * by commits made before trees; null otherwise. */
     private HashMap<String, String> data;
 
+    /** ShaCode of the tree holding this commit's files. */
+    private String tree;
+
+    /** True if I was made or decoded by this version, and so have
+     * the current stored form; false if I was deserialized, which
+     * leaves transient fields unset. */
+    private transient boolean encoded = true;
+
+    /** Starts the stored form of a commit. */
+    private static final byte[] MAGIC = {'g', 'c', 'm', 't'};
+
+    /** Version of the stored form written. */
+    private static final byte VERSION = 1;
+
+    /** Length in bytes of an id in the stored form. */
+    private static final int ID_BYTES = 20;
+
+    /** Prefix of the keys of commits in the ObjectCache. */
+    private static final String CACHE_KEY = "commit ";
+
+    /** Pinned so commits written by earlier versions still read. */
+    private static final long serialVersionUID = 6390565004993216822L;
+
     /** A field for the initial commit's year, so
      * style check will shut the hell up. */
     static final int YEAR = 1970;
@@ -0,0 +1,444 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The commit catalog: what global-log and find need to know about
+ * every commit, kept so that neither has to read a commit object.
+ *
+ * The catalog file is append-only, one fixed-size record per commit
+ * holding its id, its parents' ids, its time, and the offset and length
+ * of its message in the messages file. The tokens file is an inverted
+ * index from message words to catalog records: a sorted run of
+ * (word hash, record) pairs that find binary-searches, followed by an
+ * unsorted tail of pairs for recent commits, which is merged into the
+ * sorted run once it grows as long as the run itself.
+ * @author Hannah Verdonk */
+class CommitCatalog {
+
+    /** A catalog whose records are RECORDS, messages MESSAGES and word
+     *  index TOKENS. */
+    private CommitCatalog(ByteBuffer records, ByteBuffer messages,
+                          ByteBuffer tokens) {
+        this.records = records;
+        this.messages = messages;
+        this.tokens = tokens;
+        size = records.capacity() / RECORD_SIZE;
+    }
+
+    /** Returns the repository's catalog, rebuilding it from the commits
+     *  themselves if it is missing, as in a repository made by a
+     *  version of Gitlet that kept none, or if its files do not agree
+     *  with one another. */
+    static CommitCatalog load() {
+        if (!present()) {
+            rebuild();
+        }
+        CommitCatalog c =
+            new CommitCatalog(map(CATALOG), map(MESSAGES), map(TOKENS));
+        if (!c.intact()) {
+            rebuild();
+            c = new CommitCatalog(map(CATALOG), map(MESSAGES), map(TOKENS));
+        }
+        return c;
+    }
+
+    /** Adds commit C to the end of the catalog, under the repository
+     *  lock. The catalog is rebuilt instead if its files do not end
+     *  where its last record says they should, as when a crash cut an
+     *  earlier append short; that append's commit was stored before it
+     *  began, so rebuilding recovers it. */
+    static void append(Commit c) {
+        if (!present()) {
+            rebuild();
+            return;
+        }
+        long length = new File(CATALOG).length();
+        int position = (int) (length / RECORD_SIZE);
+        long offset = 0;
+        long tokensEnd;
+        try (FileChannel cat = FileChannel.open(new File(CATALOG).toPath());
+             FileChannel tok = FileChannel.open(new File(TOKENS).toPath())) {
+            if (position > 0) {
+                ByteBuffer last = readAt(cat, length - RECORD_SIZE,
+                                         RECORD_SIZE);
+                offset = last.getLong(MESSAGE_AT)
+                    + last.getInt(MESSAGE_AT + Long.BYTES);
+            }
+            tokensEnd = tokensEnd(tok, position);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (length % RECORD_SIZE != 0
+                || offset != new File(MESSAGES).length() || tokensEnd < 0) {
+            rebuild();
+            return;
+        }
+        byte[] message = c.message().getBytes(StandardCharsets.UTF_8);
+        Set<String> words = tokenize(c.message());
+        ByteBuffer postings = ByteBuffer.allocate(POSTING_SIZE
+                                                  * words.size());
+        for (String token : words) {
+            postings.putInt(token.hashCode()).putInt(position);
+        }
+        LockFile.append(new File(MESSAGES), offset, message);
+        LockFile.append(new File(TOKENS), tokensEnd, postings.array());
+        LockFile.append(new File(CATALOG), length,
+                        record(c, offset, message.length));
+        compactIfNeeded();
+    }
+
+    /** Returns the length of the word index open on CH, or -1 if it is
+     *  not well formed or holds a posting for a record at or past
+     *  RECORDS. */
+    private static long tokensEnd(FileChannel ch, int records)
+        throws IOException {
+        long length = ch.size();
+        if (length < TOKENS_HEADER) {
+            return -1;
+        }
+        ByteBuffer header = readAt(ch, 0, TOKENS_HEADER);
+        long sortedEnd = TOKENS_HEADER
+            + (long) header.getInt(Integer.BYTES) * POSTING_SIZE;
+        if (header.getInt(0) != TOKENS_MAGIC || sortedEnd > length
+                || (length - TOKENS_HEADER) % POSTING_SIZE != 0) {
+            return -1;
+        }
+        if (length > sortedEnd
+                && readAt(ch, length - Integer.BYTES, Integer.BYTES)
+                   .getInt() >= records) {
+            return -1;
+        }
+        return length;
+    }
+
+    /** Returns the N bytes at byte AT of the file open on CH. */
+    private static ByteBuffer readAt(FileChannel ch, long at, int n)
+        throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(n);
+        while (b.hasRemaining()) {
+            if (ch.read(b, at + b.position()) < 0) {
+                throw new IllegalArgumentException("catalog file too short");
+            }
+        }
+        return b.flip();
+    }
+
+    /** Returns true if every record's message lies within the messages
+     *  file and the word index is well formed. */
+    private boolean intact() {
+        if (tokens.capacity() < TOKENS_HEADER
+                || tokens.getInt(0) != TOKENS_MAGIC) {
+            return false;
+        }
+        int sorted = tokens.getInt(Integer.BYTES);
+        if (sorted < 0
+                || sorted > (tokens.capacity() - TOKENS_HEADER)
+                            / POSTING_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < size; i += 1) {
+            int at = i * RECORD_SIZE + MESSAGE_AT;
+            long offset = records.getLong(at);
+            int length = records.getInt(at + Long.BYTES);
+            if (offset < 0 || length < 0
+                    || offset + length > messages.capacity()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if all three catalog files exist. */
+    private static boolean present() {
+        return new File(CATALOG).exists() && new File(MESSAGES).exists()
+            && new File(TOKENS).exists();
+    }
+
+    /** Rewrites the catalog from every stored commit, in order of id. */
+    static void rebuild() {
+        ByteArrayOutputStream recs = new ByteArrayOutputStream();
+        ByteArrayOutputStream msgs = new ByteArrayOutputStream();
+        List<Long> postings = new ArrayList<>();
+        int position = 0;
+        for (String id : Commit.allIds()) {
+            Commit c = Commit.read(id);
+            byte[] message = c.message().getBytes(StandardCharsets.UTF_8);
+            recs.writeBytes(record(c, msgs.size(), message.length));
+            msgs.writeBytes(message);
+            for (String token : tokenize(c.message())) {
+                postings.add(posting(token.hashCode(), position));
+            }
+            position += 1;
+        }
+        writeAtomically(new File(MESSAGES), msgs.toByteArray());
+        writeTokens(postings);
+        writeAtomically(new File(CATALOG), recs.toByteArray());
+        CommitIndex.invalidate();
+    }
+
+    /** Returns the number of commits in the catalog. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the id of the commit at position I. */
+    String sha(int i) {
+        return idAt(i * RECORD_SIZE);
+    }
+
+    /** Returns the id of the parent of the commit at I, or null. */
+    String parent(int i) {
+        return idAt(i * RECORD_SIZE + ID_BYTES);
+    }
+
+    /** Returns the id of the second parent of the commit at I, or null
+     *  if it is not a merge commit. */
+    String secondParent(int i) {
+        return idAt(i * RECORD_SIZE + 2 * ID_BYTES);
+    }
+
+    /** Returns the time of the commit at I, in UTC like Commit.time. */
+    LocalDateTime time(int i) {
+        long millis = records.getLong(i * RECORD_SIZE + 3 * ID_BYTES);
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis),
+                                       ZoneOffset.UTC);
+    }
+
+    /** Returns the message of the commit at I. */
+    String message(int i) {
+        int at = i * RECORD_SIZE + MESSAGE_AT;
+        long offset = records.getLong(at);
+        int length = records.getInt(at + Long.BYTES);
+        byte[] bytes = new byte[length];
+        messages.get((int) offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the positions, in catalog order, of the commits whose
+     *  message is exactly MESSAGE. Only commits sharing every word of
+     *  MESSAGE are looked at. */
+    List<Integer> find(String message) {
+        Set<Integer> candidates = null;
+        for (String token : tokenize(message)) {
+            Set<Integer> withToken = postingsFor(token.hashCode());
+            if (candidates != null) {
+                withToken.retainAll(candidates);
+            }
+            candidates = withToken;
+        }
+        List<Integer> result = new ArrayList<>();
+        if (candidates == null) {
+            for (int i = 0; i < size; i += 1) {
+                if (message(i).equals(message)) {
+                    result.add(i);
+                }
+            }
+        } else {
+            for (int i : candidates) {
+                if (i < size && message(i).equals(message)) {
+                    result.add(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the catalog positions recorded under word hash HASH. */
+    private Set<Integer> postingsFor(int hash) {
+        TreeSet<Integer> result = new TreeSet<>();
+        int sorted = tokens.getInt(Integer.BYTES);
+        int total = (tokens.capacity() - TOKENS_HEADER) / POSTING_SIZE;
+        int lo = 0;
+        int hi = sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hashAt(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < sorted && hashAt(i) == hash; i += 1) {
+            result.add(recordAt(i));
+        }
+        for (int i = sorted; i < total; i += 1) {
+            if (hashAt(i) == hash) {
+                result.add(recordAt(i));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the word hash of the Ith posting. */
+    private int hashAt(int i) {
+        return tokens.getInt(TOKENS_HEADER + i * POSTING_SIZE);
+    }
+
+    /** Returns the catalog position of the Ith posting. */
+    private int recordAt(int i) {
+        return tokens.getInt(TOKENS_HEADER + i * POSTING_SIZE
+                             + Integer.BYTES);
+    }
+
+    /** Returns the commit id at byte AT of the records, or null if it
+     *  is all zeroes. */
+    private String idAt(int at) {
+        byte[] id = new byte[ID_BYTES];
+        records.get(at, id);
+        return Arrays.equals(id, NO_ID) ? null : hex(id);
+    }
+
+    /** Returns the distinct words of MESSAGE, in lower case. */
+    static Set<String> tokenize(String message) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String word : message.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the catalog record for commit C, whose message is LENGTH
+     *  bytes at OFFSET in the messages file. */
+    private static byte[] record(Commit c, long offset, int length) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(PackFile.unhex(c.shaCode()));
+            out.write(c.parent() == null ? NO_ID
+                      : PackFile.unhex(c.parent()));
+            out.write(c.secondParent() == null ? NO_ID
+                      : PackFile.unhex(c.secondParent()));
+            out.writeLong(c.time().toInstant(ZoneOffset.UTC).toEpochMilli());
+            out.writeLong(offset);
+            out.writeInt(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns a posting of word hash HASH to catalog position RECORD,
+     *  packed so postings sort by hash and then by position. */
+    private static long posting(int hash, int record) {
+        return ((long) hash << Integer.SIZE) | (record & MASK);
+    }
+
+    /** Merges the unsorted tail of the tokens file into its sorted run
+     *  once the tail is as long as the run. */
+    private static void compactIfNeeded() {
+        ByteBuffer t = map(TOKENS);
+        int sorted = t.getInt(Integer.BYTES);
+        int total = (t.capacity() - TOKENS_HEADER) / POSTING_SIZE;
+        if (total - sorted < Math.max(sorted, COMPACT_MIN)) {
+            return;
+        }
+        List<Long> postings = new ArrayList<>(total);
+        for (int i = 0; i < total; i += 1) {
+            int at = TOKENS_HEADER + i * POSTING_SIZE;
+            postings.add(posting(t.getInt(at), t.getInt(at + Integer.BYTES)));
+        }
+        writeTokens(postings);
+    }
+
+    /** Writes POSTINGS, sorted, as the whole of the tokens file. */
+    private static void writeTokens(List<Long> postings) {
+        long[] sorted = new long[postings.size()];
+        for (int i = 0; i < sorted.length; i += 1) {
+            sorted[i] = postings.get(i);
+        }
+        Arrays.sort(sorted);
+        ByteBuffer out = ByteBuffer.allocate(TOKENS_HEADER
+                                             + sorted.length * POSTING_SIZE);
+        out.putInt(TOKENS_MAGIC).putInt(sorted.length);
+        for (long p : sorted) {
+            out.putLong(p);
+        }
+        writeAtomically(new File(TOKENS), out.array());
+    }
+
+    /** Returns the file at PATH mapped into memory, read-only, cut to
+     *  whole records if it is the catalog. */
+    private static ByteBuffer map(String path) {
+        try (FileChannel ch = FileChannel.open(new File(path).toPath())) {
+            long length = ch.size();
+            if (path.equals(CATALOG)) {
+                length -= length % RECORD_SIZE;
+            }
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Fixed-size commit records. */
+    private final ByteBuffer records;
+
+    /** Commit messages, back to back. */
+    private final ByteBuffer messages;
+
+    /** The word index. */
+    private final ByteBuffer tokens;
+
+    /** Number of commits in the catalog. */
+    private final int size;
+
+    /** A String representing the path to the catalog file. */
+    static final String CATALOG = Main.GITLET + "catalog";
+
+    /** A String representing the path to the catalog's messages. */
+    static final String MESSAGES = Main.GITLET + "catalog-messages";
+
+    /** A String representing the path to the catalog's word index. */
+    static final String TOKENS = Main.GITLET + "catalog-tokens";
+
+    /** Size of a commit id in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Stands for a missing parent. */
+    private static final byte[] NO_ID = new byte[ID_BYTES];
+
+    /** Size of one record: id, two parents, time, message offset and
+     *  message length. */
+    private static final int RECORD_SIZE =
+        3 * ID_BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    /** Where in a record the message offset starts, after the ids and
+     *  the time. */
+    private static final int MESSAGE_AT = 3 * ID_BYTES + Long.BYTES;
+
+    /** Size of one posting: a word hash and a catalog position. */
+    private static final int POSTING_SIZE = Long.BYTES;
+
+    /** Size of the word index header: magic and sorted run length. */
+    private static final int TOKENS_HEADER = 2 * Integer.BYTES;
+
+    /** Marks a word index file. */
+    private static final int TOKENS_MAGIC = 0x47544f4b;
+
+    /** The shortest unsorted tail worth merging into the sorted run. */
+    private static final int COMPACT_MIN = 1024;
+
+    /** Selects the low 32 bits of a long. */
+    private static final long MASK = 0xffffffffL;
+
+}
@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/** The commit graph: a compact file holding just the shape of history,
+ * so ancestry walks never have to deserialize commits. Each commit is a
+ * fixed-size record of its id, the positions of its parents' records,
+ * its time and its generation number (one more than the largest
+ * generation among its parents; the initial commit's is 1). Parents
+ * always precede their children, so new commits are appended.
+ * @author Hannah Verdonk */
+class CommitGraph {
+
+    /** Builds a graph from the RECORDS read out of the graph file. */
+    private CommitGraph(byte[] records) {
+        int n = Math.max(records.length / RECORD_SIZE, 1);
+        ids = new byte[n * ID_BYTES];
+        parents = new int[n];
+        secondParents = new int[n];
+        times = new long[n];
+        generations = new int[n];
+        positions = new HashMap<>();
+        ByteBuffer in = ByteBuffer.wrap(records);
+        while (in.remaining() >= RECORD_SIZE) {
+            add(in);
+        }
+    }
+
+    /** Returns the repository's commit graph, rebuilding the graph file
+     *  from the commits themselves if it is missing. */
+    static CommitGraph load() {
+        File f = new File(GRAPH);
+        if (!f.exists()) {
+            rebuild();
+        }
+        return new CommitGraph(readContents(f));
+    }
+
+    /** Returns the repository's commit graph, rebuilding it first if it
+     *  lacks any of the commits named SHAS, as when they were made by a
+     *  version of Gitlet that kept no graph. */
+    static CommitGraph covering(String... shas) {
+        CommitGraph g = load();
+        for (String sha : shas) {
+            if (g.indexOf(sha) < 0) {
+                rebuild();
+                return load();
+            }
+        }
+        return g;
+    }
+
+    /** Adds commit C to the end of the graph file, under the
+     *  repository lock, dropping any partial record a crash left there
+     *  first. If either of C's parents is missing from the graph, as
+     *  when a crash came between storing it and appending its record,
+     *  the graph is rebuilt instead, so no record ever leaves out a
+     *  parent. */
+    static void append(Commit c) {
+        File f = new File(GRAPH);
+        if (!f.exists()) {
+            rebuild();
+            return;
+        }
+        CommitGraph g = load();
+        if (g.indexOf(c.shaCode()) >= 0) {
+            return;
+        }
+        for (String p : new String[] {c.parent(), c.secondParent()}) {
+            if (p != null && g.indexOf(p) < 0) {
+                rebuild();
+                return;
+            }
+        }
+        LockFile.append(f, (long) g.size() * RECORD_SIZE, g.record(c));
+    }
+
+    /** Rewrites the graph file from every stored commit, putting each
+     *  commit's parents before it. */
+    static void rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : Commit.allIds()) {
+            commits.put(id, Commit.read(id));
+        }
+        CommitGraph g = new CommitGraph(new byte[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String id : commits.keySet()) {
+            stack.push(id);
+            while (!stack.isEmpty()) {
+                String top = stack.peek();
+                if (g.indexOf(top) >= 0) {
+                    stack.pop();
+                    continue;
+                }
+                Commit c = commits.get(top);
+                boolean ready = true;
+                for (String p : new String[] {c.parent(), c.secondParent()}) {
+                    if (p != null && g.indexOf(p) < 0
+                            && commits.containsKey(p)) {
+                        stack.push(p);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    byte[] record = g.record(c);
+                    out.writeBytes(record);
+                    g.add(ByteBuffer.wrap(record));
+                }
+            }
+        }
+        writeAtomically(new File(GRAPH), out.toByteArray());
+    }
+
+    /** Returns the position of the record for the commit named SHA, or
+     *  -1 if it is not in the graph. */
+    int indexOf(String sha) {
+        Integer i = positions.get(sha);
+        return i == null ? -1 : i;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the id of the commit at position I. */
+    String sha(int i) {
+        return hex(Arrays.copyOfRange(ids, i * ID_BYTES,
+                                      (i + 1) * ID_BYTES));
+    }
+
+    /** Returns the position of the parent of the commit at I, or -1 if
+     *  it has none. */
+    int parent(int i) {
+        return parents[i];
+    }
+
+    /** Returns the position of the second parent of the commit at I,
+     *  or -1 if it is not a merge commit. */
+    int secondParent(int i) {
+        return secondParents[i];
+    }
+
+    /** Returns the time of the commit at I, in milliseconds since the
+     *  epoch. */
+    long time(int i) {
+        return times[i];
+    }
+
+    /** Returns the generation number of the commit at I. */
+    int generation(int i) {
+        return generations[i];
+    }
+
+    /** Returns the graph record for commit C, whose parents must already
+     *  be in this graph. */
+    private byte[] record(Commit c) {
+        int p1 = c.parent() == null ? NONE : indexOf(c.parent());
+        int p2 = c.secondParent() == null ? NONE : indexOf(c.secondParent());
+        int gen = 1 + Math.max(p1 == NONE ? 0 : generations[p1],
+                               p2 == NONE ? 0 : generations[p2]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(PackFile.unhex(c.shaCode()));
+            out.writeInt(p1);
+            out.writeInt(p2);
+            out.writeLong(c.time().toInstant(ZoneOffset.UTC).toEpochMilli());
+            out.writeInt(gen);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Adds the record at the current position of IN to the end of
+     *  this graph, growing its arrays as needed. */
+    private void add(ByteBuffer in) {
+        if (size == parents.length) {
+            int n = 2 * size;
+            ids = Arrays.copyOf(ids, n * ID_BYTES);
+            parents = Arrays.copyOf(parents, n);
+            secondParents = Arrays.copyOf(secondParents, n);
+            times = Arrays.copyOf(times, n);
+            generations = Arrays.copyOf(generations, n);
+        }
+        in.get(ids, size * ID_BYTES, ID_BYTES);
+        parents[size] = in.getInt();
+        secondParents[size] = in.getInt();
+        times[size] = in.getLong();
+        generations[size] = in.getInt();
+        positions.put(sha(size), size);
+        size += 1;
+    }
+
+    /** Number of commits in the graph. */
+    private int size;
+
+    /** Commit ids, ID_BYTES apiece, in graph order. */
+    private byte[] ids;
+
+    /** Position of each commit's parent, or NONE. */
+    private int[] parents;
+
+    /** Position of each commit's second parent, or NONE. */
+    private int[] secondParents;
+
+    /** Each commit's time, in milliseconds since the epoch. */
+    private long[] times;
+
+    /** Each commit's generation number. */
+    private int[] generations;
+
+    /** Position of each commit's record, by id. */
+    private HashMap<String, Integer> positions;
+
+    /** A String representing the path to the commit graph file. */
+    static final String GRAPH = Main.GITLET + "commit-graph";
+
+    /** Parent position meaning "no such parent". */
+    static final int NONE = -1;
+
+    /** Size of a commit id in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Size of one commit's record: id, two parents, time, generation. */
+    private static final int RECORD_SIZE =
+        ID_BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+}
@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A sorted index of every commit id, for resolving abbreviated ids
+ * without listing the commits directory. Like a pack's index it holds a
+ * fan-out table of 256 cumulative counts by first byte of id, then the
+ * ids in order, so a prefix is found by binary search within one
+ * bucket. It also records how many CommitCatalog records it covers;
+ * commits appended to the catalog since are scanned directly, and the
+ * index is rewritten once there are more than REINDEX of them.
+ * @author Hannah Verdonk */
+class CommitIndex {
+
+    /** Returns the ids of every commit whose id starts with the
+     *  string of hexadecimal digits ABBREV, in sorted order. */
+    static List<String> matching(String abbrev) {
+        TreeSet<String> result = new TreeSet<>();
+        String prefix = abbrev.toLowerCase();
+        if (!prefix.matches("[0-9a-f]{0,40}")) {
+            return new ArrayList<>();
+        }
+        CommitCatalog catalog = CommitCatalog.load();
+        ByteBuffer idx = load(catalog);
+        int covered = idx.getInt(Integer.BYTES);
+        for (int i = covered; i < catalog.size(); i += 1) {
+            if (catalog.sha(i).startsWith(prefix)) {
+                result.add(catalog.sha(i));
+            }
+        }
+
+        byte[] low = PackFile.unhex((prefix + ZEROES).substring(0,
+                                     2 * ID_BYTES));
+        int first = low[0] & BYTE;
+        int last = prefix.length() >= 2 ? first
+            : prefix.length() == 1 ? first | LOW_NIBBLE : FANOUT - 1;
+        int lo = first == 0 ? 0 : fanout(idx, first - 1);
+        int hi = fanout(idx, last);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(idx, mid, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < fanout(idx, last); i += 1) {
+            String id = idAt(idx, i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Removes the index, as when the catalog it refers to has been
+     *  rewritten. */
+    static void invalidate() {
+        new File(INDEX).delete();
+    }
+
+    /** Returns the index file, mapped into memory, first rewriting it
+     *  from CATALOG if it is missing or lags too far behind. */
+    private static ByteBuffer load(CommitCatalog catalog) {
+        File f = new File(INDEX);
+        if (f.exists()) {
+            ByteBuffer idx = map(f);
+            if (idx.getInt(0) == MAGIC) {
+                int covered = idx.getInt(Integer.BYTES);
+                if (covered <= catalog.size()
+                        && catalog.size() - covered <= REINDEX) {
+                    return idx;
+                }
+            }
+        }
+        write(catalog);
+        return map(f);
+    }
+
+    /** Rewrites the index file to hold every commit in CATALOG. */
+    private static void write(CommitCatalog catalog) {
+        TreeSet<String> ids = new TreeSet<>();
+        for (int i = 0; i < catalog.size(); i += 1) {
+            ids.add(catalog.sha(i));
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE
+                                             + ids.size() * ID_BYTES);
+        out.putInt(MAGIC).putInt(catalog.size());
+        int[] counts = new int[FANOUT];
+        for (String id : ids) {
+            counts[Integer.parseInt(id.substring(0, 2), HEX)] += 1;
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+            out.putInt(total);
+        }
+        for (String id : ids) {
+            out.put(PackFile.unhex(id));
+        }
+        writeAtomically(new File(INDEX), out.array());
+    }
+
+    /** Returns the number of ids in IDX whose first byte is at most
+     *  BUCKET. */
+    private static int fanout(ByteBuffer idx, int bucket) {
+        return idx.getInt(2 * Integer.BYTES + bucket * Integer.BYTES);
+    }
+
+    /** Returns the Ith id in IDX. */
+    private static String idAt(ByteBuffer idx, int i) {
+        byte[] id = new byte[ID_BYTES];
+        idx.get(HEADER_SIZE + i * ID_BYTES, id);
+        return hex(id);
+    }
+
+    /** Compares the Ith id in IDX with ID, as unsigned bytes. */
+    private static int compare(ByteBuffer idx, int i, byte[] id) {
+        byte[] mine = new byte[ID_BYTES];
+        idx.get(HEADER_SIZE + i * ID_BYTES, mine);
+        return Arrays.compareUnsigned(mine, id);
+    }
+
+    /** Returns file F mapped into memory, read-only. */
+    private static ByteBuffer map(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath())) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A String representing the path to the commit index file. */
+    static final String INDEX = Main.GITLET + "commit-index";
+
+    /** Marks a commit index file. */
+    private static final int MAGIC = 0x47434958;
+
+    /** The most catalog records the index may lag behind by. */
+    static final int REINDEX = 256;
+
+    /** Size of a commit id in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Number of fan-out buckets. */
+    private static final int FANOUT = 256;
+
+    /** Size of the header: magic, records covered and fan-out table. */
+    private static final int HEADER_SIZE = (2 + FANOUT) * Integer.BYTES;
+
+    /** Pads a prefix out to a whole id. */
+    private static final String ZEROES = "0".repeat(2 * ID_BYTES);
+
+    /** Mask for a byte's value. */
+    private static final int BYTE = 0xff;
+
+    /** Mask for the low half of a byte. */
+    private static final int LOW_NIBBLE = 0x0f;
+
+    /** Radix of ids. */
+    private static final int HEX = 16;
+
+}
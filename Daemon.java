@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A long-lived Gitlet process serving one repository, so commands sent
+ * to it by a Client skip JVM startup and find the object cache and
+ * compiled code already warm. It listens on a Unix domain socket in
+ * .gitlet and runs one command at a time, exactly as Main would,
+ * sending back what the command wrote to standard output and standard
+ * error and the exit status Main's process would have had.
+ *
+ * The object cache is kept from one command to the next, so each finds
+ * the objects earlier ones read already decoded. It is emptied after a
+ * command that fails, which may have stopped partway through.
+ *
+ * A request is an argument count followed by each argument as a
+ * length and its UTF-8 bytes; a count of STOP asks the daemon to exit.
+ * A reply is the length and bytes of standard output, the same for
+ * standard error, and the exit status.
+ * @author Hannah Verdonk */
+class Daemon {
+
+    /** Serves commands until asked to stop. */
+    static void serve() {
+        File sock = new File(SOCKET);
+        if (sock.exists()) {
+            if (running()) {
+                throw new GitletException("A daemon is already running.");
+            }
+            sock.delete();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(sock.toPath()));
+            sock.deleteOnExit();
+            boolean stopped = false;
+            while (!stopped) {
+                try (SocketChannel client = server.accept()) {
+                    stopped = handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            sock.delete();
+        }
+    }
+
+    /** Asks the daemon for this repository to exit. */
+    static void stop() {
+        try (SocketChannel ch = connect()) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(ch));
+            out.writeInt(STOP);
+            out.flush();
+            ch.shutdownOutput();
+            Channels.newInputStream(ch).readAllBytes();
+        } catch (IOException excp) {
+            throw new GitletException("No daemon is running.");
+        }
+    }
+
+    /** Returns true if a daemon is answering on this repository's
+     *  socket. */
+    @SuppressWarnings("try")
+    static boolean running() {
+        try (SocketChannel ch = connect()) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Returns a connection to this repository's daemon. */
+    static SocketChannel connect() throws IOException {
+        return SocketChannel.open(UnixDomainSocketAddress.of(SOCKET));
+    }
+
+    /** Runs the command requested on CLIENT and replies with its
+     *  results. Returns true if CLIENT asked the daemon to stop. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(client));
+        int argc = in.readInt();
+        if (argc == STOP) {
+            return true;
+        }
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i += 1) {
+            byte[] arg = new byte[in.readInt()];
+            in.readFully(arg);
+            args[i] = new String(arg, StandardCharsets.UTF_8);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = run(args, out, err);
+
+        DataOutputStream reply = new DataOutputStream(
+                Channels.newOutputStream(client));
+        reply.writeInt(out.size());
+        out.writeTo(reply);
+        reply.writeInt(err.size());
+        err.writeTo(reply);
+        reply.writeInt(status);
+        reply.flush();
+        return false;
+    }
+
+    /** Runs Main on ARGS with standard output going to OUT and standard
+     *  error to ERR, returning the exit status its own process would
+     *  have had. */
+    private static int run(String[] args, ByteArrayOutputStream out,
+                           ByteArrayOutputStream err) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream o = new PrintStream(out, true, StandardCharsets.UTF_8);
+        PrintStream e = new PrintStream(err, true, StandardCharsets.UTF_8);
+        System.setOut(o);
+        System.setErr(e);
+        int status = 1;
+        try {
+            PackFile.forget();
+            StatCache.forgetIfStale();
+            status = Main.run(args);
+            return status;
+        } catch (RuntimeException | Error excp) {
+            e.print("Exception in thread \"main\" ");
+            excp.printStackTrace(e);
+            return status;
+        } finally {
+            if (status != 0) {
+                ObjectCache.clear();
+            }
+            o.flush();
+            e.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /** A String representing the path to the daemon's socket, relative
+     *  to the working directory, since socket paths may not be long. */
+    static final String SOCKET = ".gitlet" + Main.S + "daemon.sock";
+
+    /** Argument count that asks the daemon to stop. */
+    static final int STOP = -1;
+
+}
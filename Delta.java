@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file. A delta is the length
+ * of the target followed by a list of instructions, each either
+ * copying a run of bytes out of the base or inserting literal bytes,
+ * so a one-line change to a large file costs a few bytes to store.
+ * @author Hannah Verdonk */
+class Delta {
+
+    /** Returns a delta that rebuilds TARGET from BASE, or null if it
+     *  would not be smaller than TARGET itself. */
+    static byte[] create(byte[] base, byte[] target) {
+        if (base.length < BLOCK || target.length < BLOCK) {
+            return null;
+        }
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        int h = hash(target, 0);
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(h);
+            if (at != null && matches(base, at, target, i, BLOCK)) {
+                int start = at;
+                int len = BLOCK;
+                while (start + len < base.length && i + len < target.length
+                       && base[start + len] == target[i + len]) {
+                    len += 1;
+                }
+                while (start > 0 && i > pending
+                       && base[start - 1] == target[i - 1]) {
+                    start -= 1;
+                    i -= 1;
+                    len += 1;
+                }
+                insert(out, target, pending, i);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, len);
+                i += len;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - (target[i] & BYTE) * TOP) * PRIME
+                        + (target[i + BLOCK] & BYTE);
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+        if (out.size() >= target.length) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, start, result, n, len);
+                n += len;
+            } else if (op == INSERT) {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (n != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes an instruction to OUT inserting the bytes of TARGET
+     *  from FROM up to TO, if there are any. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Returns true if the LEN bytes of A starting at I equal those of
+     *  B starting at J. */
+    private static boolean matches(byte[] a, int i, byte[] b, int j,
+                                   int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the rolling hash of the BLOCK bytes of DATA starting at
+     *  START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + (data[start + k] & BYTE);
+        }
+        return h;
+    }
+
+    /** Writes nonnegative VALUE to OUT, seven bits at a time. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= MORE) {
+            out.write((int) (value & LOW_BITS) | MORE);
+            value >>>= SHIFT;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads a varint from DATA at POS[0], advancing POS[0] past it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]] & BYTE;
+            pos[0] += 1;
+            value |= (b & LOW_BITS) << shift;
+            shift += SHIFT;
+        } while ((b & MORE) != 0);
+        return value;
+    }
+
+    /** Size of the base blocks indexed when searching for matches. */
+    private static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME to the power BLOCK - 1, for rolling a byte out. */
+    private static final int TOP = pow(PRIME, BLOCK - 1);
+
+    /** Instruction copying a run of the base. */
+    private static final int COPY = 1;
+
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Mask for an unsigned byte. */
+    private static final int BYTE = 0xff;
+
+    /** Continuation bit of a varint byte. */
+    private static final int MORE = 0x80;
+
+    /** Payload bits of a varint byte. */
+    private static final int LOW_BITS = 0x7f;
+
+    /** Number of payload bits in a varint byte. */
+    private static final int SHIFT = 7;
+
+    /** Returns X to the power N, with int overflow. */
+    private static int pow(int x, int n) {
+        int r = 1;
+        for (int i = 0; i < n; i += 1) {
+            r *= x;
+        }
+        return r;
+    }
+
+}
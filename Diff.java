@@ -0,0 +1,524 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** The line-by-line differences between two versions of a file, and
+ * their rendering as a unified diff.
+ *
+ * Both versions are split into lines (each keeping its newline), and
+ * every distinct line is numbered, so the comparison itself runs over
+ * ints. Lines found in only one version are changed whatever else
+ * happens, so they are marked at once and the rest are compared with
+ * Myers's O(ND) algorithm in its linear-space form: the middle snake
+ * of the shortest edit script is found by searching from both ends at
+ * once, and the halves on either side of it are solved the same way.
+ * Common prefixes and suffixes are trimmed at every step. As in git's
+ * xdiff, a search that runs too long settles for the furthest point it
+ * has reached, trading a slightly longer diff for bounded time.
+ * @author Hannah Verdonk */
+class Diff {
+
+    /** Compares A, the old version, with B, the new. */
+    Diff(byte[] a, byte[] b) {
+        HashMap<Line, Integer> ids = new HashMap<>();
+        oldLines = split(a);
+        newLines = split(b);
+        int[] x = number(a, oldLines, ids);
+        int[] y = number(b, newLines, ids);
+        oldData = a;
+        newData = b;
+        deleted = new boolean[x.length];
+        inserted = new boolean[y.length];
+        compareCommon(x, y, ids.size());
+    }
+
+    /** Appends to OUT a unified diff of the file PATH from BEFORE to
+     *  AFTER, either of which is null if the file is absent, or nothing
+     *  if they are the same. Binary files are only said to differ. */
+    static void file(StringBuilder out, String path, byte[] before,
+                     byte[] after) {
+        if (before != null && after != null && Arrays.equals(before, after)) {
+            return;
+        }
+        String from = before == null ? NO_FILE : "a/" + path;
+        String to = after == null ? NO_FILE : "b/" + path;
+        byte[] a = before == null ? new byte[0] : before;
+        byte[] b = after == null ? new byte[0] : after;
+        out.append("diff --git a/").append(path).append(" b/").append(path)
+            .append('\n');
+        if (isBinary(a) || isBinary(b)) {
+            out.append("Binary files ").append(from).append(" and ")
+                .append(to).append(" differ\n");
+            return;
+        }
+        out.append("--- ").append(from).append('\n');
+        out.append("+++ ").append(to).append('\n');
+        new Diff(a, b).unified(out, CONTEXT);
+    }
+
+    /** Returns true if CONTENTS look like binary data rather than text:
+     *  that is, if a zero byte occurs near their start. */
+    static boolean isBinary(byte[] contents) {
+        int n = Math.min(contents.length, BINARY_PROBE);
+        for (int i = 0; i < n; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns my changed regions, in order, each as {first old line,
+     *  end of old lines, first new line, end of new lines}, counting
+     *  from 0 with exclusive ends. */
+    List<int[]> hunks() {
+        List<int[]> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < deleted.length || j < inserted.length) {
+            if (i < deleted.length && j < inserted.length
+                    && !deleted[i] && !inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            while (i < deleted.length && deleted[i]) {
+                i += 1;
+            }
+            while (j < inserted.length && inserted[j]) {
+                j += 1;
+            }
+            result.add(new int[] {i0, i, j0, j});
+        }
+        return result;
+    }
+
+    /** Returns the number of lines in the old version. */
+    int oldSize() {
+        return deleted.length;
+    }
+
+    /** Returns the number of lines in the new version. */
+    int newSize() {
+        return inserted.length;
+    }
+
+    /** Returns the offset in the old version at which its line I
+     *  starts, or its length if I is oldSize(). */
+    int oldOffset(int i) {
+        return oldLines[i];
+    }
+
+    /** Returns the offset in the new version at which its line J
+     *  starts, or its length if J is newSize(). */
+    int newOffset(int j) {
+        return newLines[j];
+    }
+
+    /** Returns true if the two versions have the same lines. */
+    boolean isEmpty() {
+        return hunks().isEmpty();
+    }
+
+    /** Appends my changes to OUT as the hunks of a unified diff, with
+     *  CONTEXT lines of context around each. */
+    void unified(StringBuilder out, int context) {
+        List<int[]> hunks = hunks();
+        int h = 0;
+        while (h < hunks.size()) {
+            int first = h;
+            while (h + 1 < hunks.size()
+                   && hunks.get(h + 1)[0] - hunks.get(h)[1] <= 2 * context) {
+                h += 1;
+            }
+            int[] start = hunks.get(first);
+            int[] end = hunks.get(h);
+            int i0 = Math.max(start[0] - context, 0);
+            int j0 = start[2] - (start[0] - i0);
+            int i1 = Math.min(end[1] + context, oldSize());
+            int j1 = end[3] + (i1 - end[1]);
+            out.append("@@ -").append(range(i0, i1 - i0)).append(" +")
+                .append(range(j0, j1 - j0)).append(" @@\n");
+            int i = i0;
+            for (int k = first; k <= h; k += 1) {
+                int[] hunk = hunks.get(k);
+                for (; i < hunk[0]; i += 1) {
+                    line(out, ' ', oldData, oldLines, i);
+                }
+                for (i = hunk[0]; i < hunk[1]; i += 1) {
+                    line(out, '-', oldData, oldLines, i);
+                }
+                for (int j = hunk[2]; j < hunk[3]; j += 1) {
+                    line(out, '+', newData, newLines, j);
+                }
+            }
+            for (; i < i1; i += 1) {
+                line(out, ' ', oldData, oldLines, i);
+            }
+            h += 1;
+        }
+    }
+
+    /** Returns a unified diff's description of COUNT lines starting
+     *  with line START, counting from 0. */
+    private static String range(int start, int count) {
+        if (count == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /** Appends line I of DATA, which starts at STARTS[I], to OUT after
+     *  MARK, noting if it lacks a newline. */
+    private static void line(StringBuilder out, char mark, byte[] data,
+                             int[] starts, int i) {
+        int from = starts[i];
+        int to = starts[i + 1];
+        out.append(mark);
+        if (to > from && data[to - 1] == '\n') {
+            out.append(new String(data, from, to - from,
+                                  StandardCharsets.UTF_8));
+        } else {
+            out.append(new String(data, from, to - from,
+                                  StandardCharsets.UTF_8))
+                .append("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /* LINES */
+
+    /** Returns the offsets at which the lines of DATA start, followed
+     *  by DATA's length. */
+    static int[] split(byte[] data) {
+        int n = 0;
+        for (byte c : data) {
+            if (c == '\n') {
+                n += 1;
+            }
+        }
+        if (data.length > 0 && data[data.length - 1] != '\n') {
+            n += 1;
+        }
+        int[] starts = new int[n + 1];
+        int k = 1;
+        for (int i = 0; i < data.length; i += 1) {
+            if (data[i] == '\n' && k < n) {
+                starts[k] = i + 1;
+                k += 1;
+            }
+        }
+        starts[n] = data.length;
+        return starts;
+    }
+
+    /** Returns the number in IDS of each line of DATA, whose lines
+     *  start at STARTS, numbering lines not yet in IDS as it goes. */
+    private static int[] number(byte[] data, int[] starts,
+                                HashMap<Line, Integer> ids) {
+        int[] result = new int[starts.length - 1];
+        for (int i = 0; i < result.length; i += 1) {
+            Line line = new Line(data, starts[i], starts[i + 1]);
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /** One line of a file, compared by its bytes. */
+    private static class Line {
+        /** The line occupying DATA[FROM .. TO-1]. */
+        Line(byte[] data, int from, int to) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            int h = 1;
+            for (int i = from; i < to; i += 1) {
+                h = HASH_MULTIPLIER * h + data[i];
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return hash == other.hash
+                && Arrays.equals(data, from, to, other.data, other.from,
+                                 other.to);
+        }
+
+        /** Holds the line. */
+        private final byte[] data;
+        /** Where it starts. */
+        private final int from;
+        /** Where it ends. */
+        private final int to;
+        /** Its hash. */
+        private final int hash;
+    }
+
+    /* COMPARISON */
+
+    /** Marks every line of X, the old numbered lines, and of Y, the
+     *  new, whose number (below COUNT) does not occur in the other as
+     *  deleted or inserted, then compares the lines that remain. */
+    private void compareCommon(int[] x, int[] y, int count) {
+        boolean[] inX = new boolean[count];
+        boolean[] inY = new boolean[count];
+        for (int id : x) {
+            inX[id] = true;
+        }
+        for (int id : y) {
+            inY[id] = true;
+        }
+        int[] xIndex = common(x, inY, deleted);
+        int[] yIndex = common(y, inX, inserted);
+        a = new int[xIndex.length];
+        for (int i = 0; i < xIndex.length; i += 1) {
+            a[i] = x[xIndex[i]];
+        }
+        b = new int[yIndex.length];
+        for (int j = 0; j < yIndex.length; j += 1) {
+            b[j] = y[yIndex[j]];
+        }
+        aChanged = new boolean[a.length];
+        bChanged = new boolean[b.length];
+        int max = a.length + b.length + 1;
+        forward = new int[2 * max + 3];
+        backward = new int[2 * max + 3];
+        compare(0, a.length, 0, b.length);
+        for (int i = 0; i < xIndex.length; i += 1) {
+            deleted[xIndex[i]] = aChanged[i];
+        }
+        for (int j = 0; j < yIndex.length; j += 1) {
+            inserted[yIndex[j]] = bChanged[j];
+        }
+    }
+
+    /** Marks in CHANGED each line of LINES whose number is not in
+     *  OTHER, returning the indexes of those that are. */
+    private static int[] common(int[] lines, boolean[] other,
+                                boolean[] changed) {
+        int[] result = new int[lines.length];
+        int n = 0;
+        for (int i = 0; i < lines.length; i += 1) {
+            if (other[lines[i]]) {
+                result[n] = i;
+                n += 1;
+            } else {
+                changed[i] = true;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Marks the changes between A[ALO .. AHI-1] and B[BLO .. BHI-1]
+     *  in a shortest edit script. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(bChanged, bLo, bHi, true);
+        } else if (bLo == bHi) {
+            Arrays.fill(aChanged, aLo, aHi, true);
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    /** Returns the middle snake of a shortest edit script between
+     *  A[ALO .. AHI-1] and B[BLO .. BHI-1], both nonempty, as {x, y}
+     *  where it starts and {u, v} where it ends, marking the single
+     *  insertion or deletion it contains, if any. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int limit = (n + m + 1) / 2;
+        int off = limit + 1;
+        forward[off + 1] = aLo;
+        backward[off + 1] = bHi;
+        for (int d = 0; d <= limit; d += 1) {
+            for (int k = d; k >= -d; k -= 2) {
+                int px;
+                int x;
+                if (k == -d || (k != d && forward[off + k - 1]
+                                          < forward[off + k + 1])) {
+                    px = forward[off + k + 1];
+                    x = px;
+                } else {
+                    px = forward[off + k - 1];
+                    x = px + 1;
+                }
+                int y = bLo + (x - aLo) - k;
+                int py = (d == 0 || x != px) ? y : y - 1;
+                while (x < aHi && y < bHi && a[x] == b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[off + k] = x;
+                int c = k - delta;
+                if (odd && c >= -(d - 1) && c <= d - 1
+                        && y >= backward[off + c]) {
+                    markStep(px, py, x, y, true);
+                    return new int[] {px, py, x, y};
+                }
+            }
+            for (int c = d; c >= -d; c -= 2) {
+                int py;
+                int y;
+                if (c == -d || (c != d && backward[off + c - 1]
+                                          > backward[off + c + 1])) {
+                    py = backward[off + c + 1];
+                    y = py;
+                } else {
+                    py = backward[off + c - 1];
+                    y = py - 1;
+                }
+                int k = c + delta;
+                int x = aLo + (y - bLo) + k;
+                int px = (d == 0 || y != py) ? x : x + 1;
+                while (x > aLo && y > bLo && a[x - 1] == b[y - 1]) {
+                    x -= 1;
+                    y -= 1;
+                }
+                backward[off + c] = y;
+                if (!odd && k >= -d && k <= d && x <= forward[off + k]) {
+                    markStep(x, y, px, py, false);
+                    return new int[] {x, y, px, py};
+                }
+            }
+            if (d >= costLimit(n, m)) {
+                int[] split = furthest(aLo, aHi, bLo, bHi, d);
+                if (split != null) {
+                    return split;
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Returns the number of steps the search for a middle snake
+     *  between N and M lines may take before it settles for a split
+     *  that is merely good, as xdiff does: roughly the square root of
+     *  the size of the problem, and at least MIN_COST. Without it,
+     *  versions sharing many lines in a different order would take
+     *  time quadratic in their length to compare. */
+    private static int costLimit(int n, int m) {
+        return Math.max(MIN_COST, (int) Math.sqrt(n + m));
+    }
+
+    /** Returns, as middleSnake does, an empty snake at the point of the
+     *  box A[ALO .. AHI-1], B[BLO .. BHI-1] furthest from its corner
+     *  that either search reached in D steps, or null if neither has
+     *  left its corner. */
+    private int[] furthest(int aLo, int aHi, int bLo, int bHi, int d) {
+        int off = (aHi - aLo + bHi - bLo + 1) / 2 + 1;
+        int delta = (aHi - aLo) - (bHi - bLo);
+        int best = 0;
+        int[] result = null;
+        for (int k = d; k >= -d; k -= 2) {
+            int x = forward[off + k];
+            int y = bLo + (x - aLo) - k;
+            int progress = (x - aLo) + (y - bLo);
+            if (x <= aHi && y >= bLo && y <= bHi && progress > best) {
+                best = progress;
+                result = new int[] {x, y, x, y};
+            }
+        }
+        for (int c = d; c >= -d; c -= 2) {
+            int y = backward[off + c];
+            int x = aLo + (y - bLo) + c + delta;
+            int progress = (aHi - x) + (bHi - y);
+            if (x >= aLo && x <= aHi && y >= bLo && progress > best) {
+                best = progress;
+                result = new int[] {x, y, x, y};
+            }
+        }
+        return result;
+    }
+
+    /** Marks the insertion or deletion, if any, on the path from (X0, Y0)
+     *  to (X1, Y1), which it takes FIRST or else last of its steps, the
+     *  others all being matches. */
+    private void markStep(int x0, int y0, int x1, int y1, boolean first) {
+        int dx = x1 - x0;
+        int dy = y1 - y0;
+        if (dx > dy) {
+            aChanged[first ? x0 : x1 - 1] = true;
+        } else if (dy > dx) {
+            bChanged[first ? y0 : y1 - 1] = true;
+        }
+    }
+
+    /** The old version and the offsets of its lines. */
+    private final byte[] oldData;
+    /** Offsets of the old version's lines, and its length. */
+    private final int[] oldLines;
+    /** The new version. */
+    private final byte[] newData;
+    /** Offsets of the new version's lines, and its length. */
+    private final int[] newLines;
+
+    /** For each old line, true if it was deleted. */
+    private final boolean[] deleted;
+    /** For each new line, true if it was inserted. */
+    private final boolean[] inserted;
+
+    /** Numbers of the old lines also found in the new version. */
+    private int[] a;
+    /** Numbers of the new lines also found in the old version. */
+    private int[] b;
+    /** For each of A, true if it was deleted. */
+    private boolean[] aChanged;
+    /** For each of B, true if it was inserted. */
+    private boolean[] bChanged;
+    /** Furthest reaching forward paths, by diagonal. */
+    private int[] forward;
+    /** Furthest reaching backward paths, by diagonal. */
+    private int[] backward;
+
+    /** Lines of context around each change in a unified diff. */
+    static final int CONTEXT = 3;
+
+    /** Stands for a missing file in a unified diff's header. */
+    private static final String NO_FILE = "/dev/null";
+
+    /** Number of bytes searched for a zero byte to detect binary
+     *  contents, as git does. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Fewest steps the search for a middle snake takes before it may
+     *  settle for a split that is merely good. */
+    private static final int MIN_COST = 256;
+
+    /** Multiplier of the polynomial hash of a line. */
+    private static final int HASH_MULTIPLIER = 31;
+
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/** A three-way merge of two versions of a file with the version they
+ * both started from, in the manner of diff3.
+ *
+ * Both versions are compared line by line with the base. Their hunks
+ * are taken in order of where they start in the base, and hunks from
+ * the two sides that overlap or touch there are gathered into one
+ * region. A region only one side changed takes that side's lines; a
+ * region both sides changed the same way takes those lines once; and a
+ * region they changed differently is a conflict, written as the current
+ * side's lines and the other side's between conflict markers. Lines
+ * neither side changed are copied from the base, so the markers
+ * surround only the lines in dispute. Everything is done on the bytes
+ * of the three versions, in memory.
+ * @author Hannah Verdonk */
+class FileMerge {
+
+    /** Merges OURS, the current version, and THEIRS, the other, which
+     *  both descend from BASE. An absent version is empty. */
+    FileMerge(byte[] base, byte[] ours, byte[] theirs) {
+        Diff o = new Diff(base, ours);
+        Diff t = new Diff(base, theirs);
+        List<int[]> oHunks = o.hunks();
+        List<int[]> tHunks = t.hunks();
+        int pos = 0;
+        int i = 0;
+        int j = 0;
+        int oDelta = 0;
+        int tDelta = 0;
+        while (i < oHunks.size() || j < tHunks.size()) {
+            int lo = j == tHunks.size() || (i < oHunks.size()
+                     && oHunks.get(i)[0] <= tHunks.get(j)[0])
+                ? oHunks.get(i)[0] : tHunks.get(j)[0];
+            int hi = lo;
+            int i0 = i;
+            int j0 = j;
+            int oStart = o.newOffset(lo + oDelta);
+            int tStart = t.newOffset(lo + tDelta);
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (i < oHunks.size() && oHunks.get(i)[0] <= hi) {
+                    hi = Math.max(hi, oHunks.get(i)[1]);
+                    oDelta += delta(oHunks.get(i));
+                    i += 1;
+                    grew = true;
+                }
+                if (j < tHunks.size() && tHunks.get(j)[0] <= hi) {
+                    hi = Math.max(hi, tHunks.get(j)[1]);
+                    tDelta += delta(tHunks.get(j));
+                    j += 1;
+                    grew = true;
+                }
+            }
+            copy(base, o.oldOffset(pos), o.oldOffset(lo));
+            int oEnd = o.newOffset(hi + oDelta);
+            int tEnd = t.newOffset(hi + tDelta);
+            if (j0 == j) {
+                copy(ours, oStart, oEnd);
+            } else if (i0 == i || Arrays.equals(ours, oStart, oEnd,
+                                                theirs, tStart, tEnd)) {
+                copy(theirs, tStart, tEnd);
+            } else {
+                conflicted = true;
+                marker(TOP);
+                copy(ours, oStart, oEnd);
+                marker(MIDDLE);
+                copy(theirs, tStart, tEnd);
+                marker(BOTTOM);
+            }
+            pos = hi;
+        }
+        copy(base, o.oldOffset(pos), o.oldOffset(o.oldSize()));
+    }
+
+    /** Returns the merged contents. */
+    byte[] contents() {
+        return out.toByteArray();
+    }
+
+    /** Returns true if the versions conflicted anywhere. */
+    boolean conflicted() {
+        return conflicted;
+    }
+
+    /** Returns the number of lines HUNK adds to the version it comes
+     *  from, which is negative if it removes lines. */
+    private static int delta(int[] hunk) {
+        return (hunk[3] - hunk[2]) - (hunk[1] - hunk[0]);
+    }
+
+    /** Appends DATA[FROM .. TO-1] to the result. */
+    private void copy(byte[] data, int from, int to) {
+        if (to > from) {
+            out.write(data, from, to - from);
+            endsLine = data[to - 1] == '\n';
+        }
+    }
+
+    /** Appends the conflict marker LINE to the result, first ending
+     *  the line before it if that has no newline. */
+    private void marker(byte[] line) {
+        if (!endsLine) {
+            out.write('\n');
+        }
+        out.write(line, 0, line.length);
+        endsLine = true;
+    }
+
+    /** Returns the UTF-8 bytes of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The merged contents so far. */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /** True if the result so far is empty or ends with a newline. */
+    private boolean endsLine = true;
+
+    /** True once a conflict has been written. */
+    private boolean conflicted;
+
+    /** Opens a conflict, before the current side's lines. */
+    static final byte[] TOP = bytes("<<<<<<< HEAD\n");
+
+    /** Separates the current side's lines from the other side's. */
+    static final byte[] MIDDLE = bytes("=======\n");
+
+    /** Closes a conflict, after the other side's lines. */
+    static final byte[] BOTTOM = bytes(">>>>>>>\n");
+
+}
@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static gitlet.Utils.*;
+
+/** Checks a repository's integrity, as the fsck command.
+ *
+ * Every stored copy of every object, loose or packed, is read back and
+ * rehashed in parallel; blobs are streamed through the digest, never
+ * held whole. A copy that cannot be read, or hashes to anything but
+ * its name, is corrupt. The links read out of commits and trees, the
+ * branch heads and the staged blobs must all name objects that exist;
+ * one that does not is missing. An object nothing links to, and that
+ * no branch, reflog or staged file names, is dangling: harmless, and
+ * reported only for information. The command exits with status 1 if
+ * anything is corrupt or missing.
+ * @author Hannah Verdonk */
+class Fsck {
+
+    /** Checks the repository, printing each problem found. */
+    static void check() {
+        List<Copy> copies = new ArrayList<>();
+        Set<String> commits = listed(Main.COMMITS, PackFile.COMMIT, copies);
+        Set<String> trees = listed(Main.TREES, PackFile.TREE, copies);
+        Set<String> blobs = listed(Main.BLOBS, PackFile.BLOB, copies);
+        blobs.addAll(PackFile.ids(PackFile.DELTA));
+        for (String id : PackFile.ids(PackFile.DELTA)) {
+            copies.add(new Copy(id, PackFile.BLOB, true));
+        }
+
+        Queue<String> corrupt = new ConcurrentLinkedQueue<>();
+        Links links = new Links();
+        Workers.map(copies, c -> {
+            if (!c.verify(links)) {
+                corrupt.add("corrupt " + c.kind() + " " + c.id
+                            + (c.packed ? " (packed)" : ""));
+            }
+            return null;
+        });
+
+        List<String> missing = new ArrayList<>();
+        missingFrom(links.commits, commits, "commit", missing);
+        missingFrom(links.trees, trees, "tree", missing);
+        missingFrom(links.blobs, blobs, "blob", missing);
+        Map<String, String> branches = Refs.all();
+        for (Map.Entry<String, String> e : branches.entrySet()) {
+            if (!commits.contains(e.getValue())) {
+                missing.add("missing commit " + e.getValue()
+                            + " (branch " + e.getKey() + ")");
+            }
+        }
+        if (!branches.containsKey(Refs.current())) {
+            missing.add("missing branch " + Refs.current()
+                        + " (current)");
+        }
+        Map<String, String> staged = Index.read().added();
+        for (Map.Entry<String, String> e : staged.entrySet()) {
+            if (!blobs.contains(e.getValue())) {
+                missing.add("missing blob " + e.getValue() + " (staged "
+                            + e.getKey() + ")");
+            }
+        }
+
+        Set<String> named = new HashSet<>(branches.values());
+        named.addAll(staged.values());
+        List<String> logs = new ArrayList<>(branches.keySet());
+        logs.add(null);
+        for (String name : logs) {
+            for (Refs.LogEntry e : Refs.reflog(name)) {
+                named.add(e.sha);
+            }
+        }
+        List<String> dangling = new ArrayList<>();
+        danglingIn(commits, links.commits, named, "commit", dangling);
+        danglingIn(trees, links.trees, named, "tree", dangling);
+        danglingIn(blobs, links.blobs, named, "blob", dangling);
+
+        List<String> problems = new ArrayList<>(corrupt);
+        Collections.sort(problems);
+        Collections.sort(missing);
+        problems.addAll(missing);
+        for (String line : problems) {
+            System.out.println(line);
+        }
+        Collections.sort(dangling);
+        for (String line : dangling) {
+            System.out.println(line);
+        }
+        String summary = "Checked " + copies.size() + " objects, found "
+            + problems.size() + " problems.";
+        if (!problems.isEmpty()) {
+            throw new GitletException(summary, 1);
+        }
+        System.out.println(summary);
+    }
+
+    /** Adds a Copy of TYPE to COPIES for every loose object in DIR and
+     *  every packed object of TYPE, returning the ids of all of them. */
+    private static Set<String> listed(String dir, byte type,
+                                      List<Copy> copies) {
+        Set<String> ids = new HashSet<>();
+        for (String id : ObjectPath.list(dir)) {
+            copies.add(new Copy(id, type, false));
+            ids.add(id);
+        }
+        for (String id : PackFile.ids(type)) {
+            copies.add(new Copy(id, type, true));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /** Adds a line to RESULT for each of LINKED, mapping ids to the
+     *  object that links to them, that is not among the stored objects
+     *  of KIND, STORED. */
+    private static void missingFrom(Map<String, String> linked,
+                                    Set<String> stored, String kind,
+                                    List<String> result) {
+        for (Map.Entry<String, String> e : linked.entrySet()) {
+            if (!stored.contains(e.getKey())) {
+                result.add("missing " + kind + " " + e.getKey()
+                           + " (from " + e.getValue() + ")");
+            }
+        }
+    }
+
+    /** Adds a line to RESULT for each of the stored objects of KIND,
+     *  STORED, that is neither in LINKED nor in NAMED. */
+    private static void danglingIn(Set<String> stored,
+                                   Map<String, String> linked,
+                                   Set<String> named, String kind,
+                                   List<String> result) {
+        for (String id : stored) {
+            if (!linked.containsKey(id) && !named.contains(id)) {
+                result.add("dangling " + kind + " " + id);
+            }
+        }
+    }
+
+    /** The links found in the objects read so far: for each kind of
+     *  object, the ids linked to, each mapped to one object linking to
+     *  it. Shared between the threads doing the reading. */
+    private static class Links {
+        /** Linked commits, by id. */
+        final Map<String, String> commits = new ConcurrentHashMap<>();
+        /** Linked trees, by id. */
+        final Map<String, String> trees = new ConcurrentHashMap<>();
+        /** Linked blobs, by id. */
+        final Map<String, String> blobs = new ConcurrentHashMap<>();
+
+        /** Records that the object FROM links to each of IDS that is not
+         *  null, in TO. */
+        void add(String from, Iterable<String> ids, Map<String, String> to) {
+            for (String id : ids) {
+                if (id != null) {
+                    to.putIfAbsent(id, from);
+                }
+            }
+        }
+    }
+
+    /** One stored copy of an object. */
+    private static class Copy {
+        /** The copy of object ID, of TYPE, in a pack if PACKED. */
+        Copy(String id, byte type, boolean packed) {
+            this.id = id;
+            this.type = type;
+            this.packed = packed;
+        }
+
+        /** Returns the name of my type. */
+        String kind() {
+            return type == PackFile.COMMIT ? "commit"
+                : type == PackFile.TREE ? "tree" : "blob";
+        }
+
+        /** Returns true if I can be read and hash to my id, adding the
+         *  links I hold to LINKS. */
+        boolean verify(Links links) {
+            try {
+                switch (type) {
+                case PackFile.COMMIT:
+                    return verifyCommit(links);
+                case PackFile.TREE:
+                    return verifyTree(links);
+                default:
+                    return verifyBlob();
+                }
+            } catch (IOException | RuntimeException excp) {
+                return false;
+            }
+        }
+
+        /** Returns true if I am a commit whose shaCode is my id and
+         *  matches its contents, adding its links to LINKS. */
+        private boolean verifyCommit(Links links) throws IOException {
+            Commit c = Commit.decode(contents(Main.COMMITS));
+            String from = "commit " + id;
+            Set<String> trees = new HashSet<>();
+            Set<String> blobs = new HashSet<>();
+            c.links(trees, blobs);
+            links.add(from, Arrays.asList(c.parent(), c.secondParent()),
+                      links.commits);
+            links.add(from, trees, links.trees);
+            links.add(from, blobs, links.blobs);
+            return c.shaCode().equals(id) && c.hashMatches();
+        }
+
+        /** Returns true if I am a tree that hashes to my id, adding its
+         *  links to LINKS. */
+        private boolean verifyTree(Links links) throws IOException {
+            Set<String> trees = new HashSet<>();
+            Set<String> blobs = new HashSet<>();
+            String sha = Tree.check(contents(Main.TREES), trees, blobs);
+            String from = "tree " + id;
+            links.add(from, trees, links.trees);
+            links.add(from, blobs, links.blobs);
+            return sha.equals(id);
+        }
+
+        /** Returns true if my contents, streamed through the digest,
+         *  hash to my id. */
+        private boolean verifyBlob() throws IOException {
+            MessageDigest md = newSha1();
+            byte[] buf = new byte[BlobStore.BUFFER_SIZE];
+            try (InputStream in = packed ? PackFile.open(id)
+                                         : BlobStore.open(id)) {
+                for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                    md.update(buf, 0, n);
+                }
+            }
+            return hex(md.digest()).equals(id);
+        }
+
+        /** Returns my contents, if I am a commit or tree kept loose in
+         *  DIR or in a pack. */
+        private byte[] contents(String dir) throws IOException {
+            if (packed) {
+                return PackFile.read(id);
+            }
+            try (InputStream in = openObject(ObjectPath.of(dir, id))) {
+                return in.readAllBytes();
+            }
+        }
+
+        /** The object's id. */
+        final String id;
+        /** COMMIT, TREE or BLOB. */
+        final byte type;
+        /** True if this copy is in a pack. */
+        final boolean packed;
+    }
+
+}
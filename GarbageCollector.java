@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** Removes objects nothing can reach any more, as the gc command.
+ *
+ * Marking starts from every branch head, every commit named by a
+ * reflog entry made within the grace period, and every blob staged in
+ * the index, and follows both parents
+ * of each commit and the trees and blobs of its snapshot. The roots are
+ * marked in parallel into shared sets, so history common to several
+ * branches is walked only once.
+ *
+ * An unreachable object is only removed once it is older than a grace
+ * period, GITLET_GC_GRACE seconds (two weeks unless set), so that work
+ * abandoned a moment ago can still be recovered. Loose objects age by
+ * their modification time. Unreachable objects in a pack age by the
+ * pack's time: those still within the grace period are written out
+ * loose, stamped with it, and the rest are dropped when everything
+ * reachable is repacked.
+ * @author Hannah Verdonk */
+class GarbageCollector {
+
+    /** Collects garbage, printing what was packed and removed. */
+    static void collect() {
+        long cutoff = System.currentTimeMillis() - GRACE;
+
+        Set<String> commits = ConcurrentHashMap.newKeySet();
+        Set<String> trees = ConcurrentHashMap.newKeySet();
+        Set<String> blobs = ConcurrentHashMap.newKeySet();
+        blobs.addAll(Index.read().added().values());
+        Workers.map(roots(cutoff), root -> {
+            mark(root, commits, trees, blobs);
+            return null;
+        });
+
+        long[] pruned = new long[2];
+        int commitsBefore = Commit.allIds().size();
+        for (String id : unreachable(PackFile.COMMIT, commits)) {
+            loosen(id, Main.COMMITS, cutoff, pruned);
+        }
+        for (String id : unreachable(PackFile.TREE, trees)) {
+            loosen(id, Main.TREES, cutoff, pruned);
+        }
+        for (String id : unreachable(PackFile.BLOB, blobs)) {
+            loosen(id, Main.BLOBS, cutoff, pruned);
+        }
+
+        Set<String> keep = new LinkedHashSet<>(commits);
+        keep.addAll(trees);
+        keep.addAll(blobs);
+        int[] counts = PackFile.repack(keep);
+
+        sweep(Main.COMMITS, commits, cutoff, pruned);
+        sweep(Main.TREES, trees, cutoff, pruned);
+        sweep(Main.BLOBS, blobs, cutoff, pruned);
+        if (Commit.allIds().size() != commitsBefore) {
+            CommitGraph.rebuild();
+            CommitCatalog.rebuild();
+        }
+
+        System.out.println("Packed " + counts[0] + " objects, "
+                + counts[1] + " as deltas.");
+        System.out.println("Pruned " + pruned[0] + " unreachable objects, "
+                + "reclaiming " + pruned[1] + " bytes.");
+    }
+
+    /** Returns the commits marking starts from: the branch heads and
+     *  every commit named by a reflog entry made after CUTOFF. */
+    private static Set<String> roots(long cutoff) {
+        Set<String> roots = new LinkedHashSet<>(Refs.all().values());
+        List<String> logs = new ArrayList<>(Refs.all().keySet());
+        logs.add(null);
+        for (String name : logs) {
+            for (Refs.LogEntry e : Refs.reflog(name)) {
+                if (e.time < cutoff) {
+                    break;
+                }
+                if (e.old != null) {
+                    roots.add(e.old);
+                }
+                roots.add(e.sha);
+            }
+        }
+        return roots;
+    }
+
+    /** Adds the commit ROOT and its ancestors to COMMITS, and the trees
+     *  and blobs of their snapshots to TREES and BLOBS, stopping at
+     *  commits already in COMMITS. */
+    private static void mark(String root, Set<String> commits,
+                             Set<String> trees, Set<String> blobs) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            String sha = pending.pop();
+            if (!commits.add(sha) || !Commit.exists(sha)) {
+                continue;
+            }
+            Commit c = Commit.read(sha);
+            if (c.parent() != null) {
+                pending.push(c.parent());
+            }
+            if (c.secondParent() != null) {
+                pending.push(c.secondParent());
+            }
+            c.reachable(trees, blobs);
+        }
+    }
+
+    /** Returns the packed objects of TYPE that are not in REACHABLE and
+     *  have no loose copy. */
+    private static Set<String> unreachable(byte type, Set<String> reachable) {
+        Set<String> ids = new LinkedHashSet<>(PackFile.ids(type));
+        if (type == PackFile.BLOB) {
+            ids.addAll(PackFile.ids(PackFile.DELTA));
+        }
+        String dir = type == PackFile.COMMIT ? Main.COMMITS
+            : type == PackFile.TREE ? Main.TREES : Main.BLOBS;
+        Set<String> result = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!reachable.contains(id) && !ObjectPath.exists(dir, id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Writes the unreachable packed object ID out loose into DIR if its
+     *  pack is newer than CUTOFF, stamped with the pack's time, so that
+     *  it survives repacking and ages from there. If it is older, it
+     *  will be dropped, and is counted in PRUNED, which holds a count
+     *  of objects and of the bytes they take up. */
+    private static void loosen(String id, String dir, long cutoff,
+                               long[] pruned) {
+        long packedAt = PackFile.packedAt(id);
+        if (packedAt < cutoff) {
+            pruned[0] += 1;
+            pruned[1] += PackFile.packedSize(id);
+            return;
+        }
+        byte[] contents = PackFile.read(id);
+        File f;
+        if (dir.equals(Main.BLOBS)) {
+            f = BlobStore.writeLoose(id, contents);
+        } else {
+            f = ObjectPath.create(dir, id);
+            writeCompressed(f, contents);
+        }
+        f.setLastModified(packedAt);
+    }
+
+    /** Deletes the loose objects in DIR that are not in REACHABLE and
+     *  were last modified before CUTOFF, counting them in PRUNED as
+     *  loosen does. */
+    private static void sweep(String dir, Set<String> reachable,
+                              long cutoff, long[] pruned) {
+        for (String id : ObjectPath.list(dir)) {
+            File f = ObjectPath.of(dir, id);
+            long size = f.length();
+            if (!reachable.contains(id) && f.lastModified() < cutoff
+                    && f.delete()) {
+                pruned[0] += 1;
+                pruned[1] += size;
+            }
+        }
+    }
+
+    /** Returns the grace period in milliseconds. */
+    private static long grace() {
+        String n = System.getenv("GITLET_GC_GRACE");
+        if (n != null && n.matches("[0-9]+")) {
+            return Long.parseLong(n) * MILLIS;
+        }
+        return DEFAULT_GRACE;
+    }
+
+    /** Milliseconds in a second. */
+    private static final long MILLIS = 1000;
+
+    /** Grace period used unless GITLET_GC_GRACE says otherwise: two
+     *  weeks, in milliseconds. */
+    private static final long DEFAULT_GRACE = 14L * 24 * 60 * 60 * MILLIS;
+
+    /** Milliseconds an unreachable object is kept before removal. */
+    static final long GRACE = grace();
+
+}
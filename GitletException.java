@@ -10,11 +10,30 @@ class GitletException extends RuntimeException {
     /** A GitletException with no message. */
     GitletException() {
         super();
+        status = 0;
     }
 
     /** A GitletException MSG as its message. */
     GitletException(String msg) {
+        this(msg, 0);
+    }
+
+    /** A GitletException with MSG as its message, after which Gitlet
+     *  exits with STATUS. */
+    GitletException(String msg, int status) {
         super(msg);
+        this.status = status;
+    }
+
+    /** Returns the status Gitlet exits with after this error. */
+    int status() {
+        return status;
     }
 
+    /** Exit status; most errors are reported and exit normally. */
+    private final int status;
+
+    /** Version of this exception's serialized form. */
+    private static final long serialVersionUID = 1L;
+
 }
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The staging index: every path with changes staged for the next
+ * commit, in one file sorted by path. Each entry is added (with the
+ * blob it will commit), removed (to be untracked), or conflicted (left
+ * with conflict markers by a merge, until it is added, removed or
+ * committed again).
+ *
+ * The file holds a magic number and an entry count, then each entry as
+ * its state byte, the length and UTF-8 bytes of its path, and the
+ * 20-byte id of its blob (zeroes if it has none). It is read through a
+ * memory map and replaced whole through a LockFile, so a reader never
+ * sees it half-written. Repositories made by earlier
+ * versions of Gitlet keep a serialized Stage and RemovedSet instead;
+ * those are read in and replaced the first time the index is written.
+ * @author Hannah Verdonk */
+class Index {
+
+    /** An empty index. */
+    Index() {
+        entries = new TreeMap<>();
+    }
+
+    /** Returns the repository's index. */
+    @SuppressWarnings("try")
+    static Index read() {
+        Index ix = new Index();
+        File f = new File(INDEX);
+        try (Trace.Span s = Trace.begin("read index")) {
+            if (f.exists()) {
+                ix.decode(f);
+            } else {
+                ix.readLegacy();
+            }
+        }
+        return ix;
+    }
+
+    /** Writes me out as the repository's index, replacing the old one
+     *  through its lock file. */
+    @SuppressWarnings("try")
+    void write() {
+        try (Trace.Span s = Trace.begin("write index")) {
+            LockFile.replace(new File(INDEX), encode());
+        }
+        new File(LEGACY_STAGE).delete();
+        new File(LEGACY_REMOVED).delete();
+    }
+
+    /* STAGING */
+
+    /** Stages every file in FILES, keyed by name, to be committed as
+     *  it is now. The files are hashed and stored in parallel. A file
+     *  that matches the head commit is unstaged instead. */
+    void addAll(Map<String, File> files) {
+        Map<String, String> head = head();
+        List<String> names = new ArrayList<>(files.keySet());
+        List<String> shas = Workers.map(names, name -> {
+            File f = files.get(name);
+            String committed = head.get(name);
+            if (committed != null
+                    && StatCache.unchanged(f, name, committed)) {
+                return committed;
+            }
+            String sha = BlobStore.put(f);
+            StatCache.record(f, name, sha);
+            return sha;
+        });
+
+        for (int i = 0; i < names.size(); i += 1) {
+            String name = names.get(i);
+            String sha = shas.get(i);
+            if (sha.equals(head.get(name))) {
+                entries.remove(name);
+            } else {
+                entries.put(name, new Entry(ADDED, sha));
+            }
+        }
+    }
+
+    /** Unstages the working file F, named NAME, and, if it is as the
+     *  head commit has it, stages its removal and deletes it. */
+    void remove(File f, String name) {
+        Entry e = entries.get(name);
+        boolean staged = e != null && e.state == ADDED;
+        boolean removed = e != null && e.state == REMOVED;
+        boolean inParent = inParentCommit(f, name);
+
+        if (!staged && (!inParent || removed)) {
+            throw new GitletException("No reason to remove the file.");
+        }
+        if (staged) {
+            entries.remove(name);
+        }
+        if (inParent && !removed) {
+            entries.put(name, new Entry(REMOVED, null));
+            if (f.exists()) {
+                Utils.deleteWorkingFile(name);
+            }
+        }
+    }
+
+    /** Returns true if the head commit tracks the working file F,
+     *  named NAME, and F is missing or holds what the commit has. */
+    private boolean inParentCommit(File f, String name) {
+        String committed = head().get(name);
+        if (committed == null) {
+            return false;
+        }
+        return !f.exists() || StatCache.hash(f, name).equals(committed);
+    }
+
+    /** Returns the head commit's files, read once however many paths
+     *  are staged. */
+    private Map<String, String> head() {
+        if (head == null) {
+            head = Commit.getLastCommit().data();
+        }
+        return head;
+    }
+
+    /** Records that NAME was left with conflict markers by a merge. */
+    void markConflicted(String name) {
+        entries.put(name, new Entry(CONFLICTED, null));
+    }
+
+    /** Unstages everything. */
+    void clear() {
+        entries.clear();
+    }
+
+    /* QUERIES */
+
+    /** Returns the paths staged to be added, mapped to their blobs'
+     *  shaCodes, in path order. */
+    Map<String, String> added() {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().state == ADDED) {
+                result.put(e.getKey(), e.getValue().sha);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Returns the paths staged for removal, in path order. */
+    Set<String> removed() {
+        return withState(REMOVED);
+    }
+
+    /** Returns the paths left conflicted by a merge, in path order. */
+    Set<String> conflicted() {
+        return withState(CONFLICTED);
+    }
+
+    /** Returns true if anything is staged to be added or removed. */
+    boolean hasChanges() {
+        for (Entry e : entries.values()) {
+            if (e.state != CONFLICTED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the paths whose entries are in STATE, in path order. */
+    private Set<String> withState(byte state) {
+        TreeSet<String> result = new TreeSet<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().state == state) {
+                result.add(e.getKey());
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /* STORAGE */
+
+    /** Returns my stored form. */
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                byte[] path = e.getKey().getBytes(StandardCharsets.UTF_8);
+                String sha = e.getValue().sha;
+                out.writeByte(e.getValue().state);
+                out.writeInt(path.length);
+                out.write(path);
+                out.write(sha == null ? NO_ID : PackFile.unhex(sha));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Reads my entries from the index file F. */
+    private void decode(File f) {
+        ByteBuffer in;
+        try (FileChannel ch = FileChannel.open(f.toPath())) {
+            in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a gitlet index");
+        }
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            byte state = in.get();
+            byte[] path = new byte[in.getInt()];
+            in.get(path);
+            byte[] id = new byte[ID_BYTES];
+            in.get(id);
+            String sha = Arrays.equals(id, NO_ID) ? null : hex(id);
+            entries.put(new String(path, StandardCharsets.UTF_8),
+                        new Entry(state, sha));
+        }
+    }
+
+    /** Reads my entries from the Stage and RemovedSet files kept by
+     *  earlier versions of Gitlet, if there are any. */
+    private void readLegacy() {
+        File stage = new File(LEGACY_STAGE);
+        File removed = new File(LEGACY_REMOVED);
+        if (stage.exists()) {
+            Stage st = readObject(stage, Stage.class);
+            for (Map.Entry<String, String> e : st.index().entrySet()) {
+                entries.put(e.getKey(), new Entry(ADDED, e.getValue()));
+            }
+        }
+        if (removed.exists()) {
+            RemovedSet r = readObject(removed, RemovedSet.class);
+            for (String name : r.removed()) {
+                entries.put(name, new Entry(REMOVED, null));
+            }
+        }
+    }
+
+    /** One path's staged state. */
+    private static class Entry {
+        /** An entry in STATE, for the blob SHA or null. */
+        Entry(byte state, String sha) {
+            this.state = state;
+            this.sha = sha;
+        }
+
+        /** ADDED, REMOVED or CONFLICTED. */
+        private final byte state;
+        /** ShaCode of the staged blob, or null. */
+        private final String sha;
+    }
+
+    /** Entries by path. */
+    private final TreeMap<String, Entry> entries;
+
+    /** The head commit's files, once head has read them. */
+    private Map<String, String> head;
+
+    /** A String representing the path to the index file. */
+    static final String INDEX = Main.GITLET + "index";
+
+    /** Where earlier versions of Gitlet kept the serialized Stage. */
+    static final String LEGACY_STAGE = Main.GITLET + "stage";
+
+    /** Where earlier versions of Gitlet kept the RemovedSet. */
+    static final String LEGACY_REMOVED = Main.GITLET + "removed";
+
+    /** State of a path staged to be added. */
+    static final byte ADDED = 1;
+
+    /** State of a path staged for removal. */
+    static final byte REMOVED = 2;
+
+    /** State of a path left with conflict markers by a merge. */
+    static final byte CONFLICTED = 3;
+
+    /** Marks an index file. */
+    private static final int MAGIC = 0x47494e58;
+
+    /** Size of an object id in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Stands for a missing blob. */
+    private static final byte[] NO_ID = new byte[ID_BYTES];
+
+}
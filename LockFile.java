@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Crash-safe updates of refs and the index, in the manner of git's
+ * lockfiles. To replace a file F, its new contents are written to
+ * F.lock, which is created exclusively, flushed to disk, and renamed
+ * over F; readers see the old F or the new one, never a mix, and never
+ * wait. Before any such rename, every object this process has written
+ * is flushed to disk too, so a crash cannot leave a branch naming a
+ * commit whose objects were lost.
+ *
+ * Commands that change the repository also hold the repository lock,
+ * an operating-system lock on .gitlet/lock, for as long as they run. A
+ * second such command waits up to GITLET_LOCK_TIMEOUT milliseconds
+ * (default 5000) for it, then gives up. The lock is released by the
+ * operating system if its holder dies, so a crash never leaves it
+ * stuck. Commands that only read take no lock.
+ * @author Hannah Verdonk */
+class LockFile {
+
+    /** Locks TARGET for replacement, creating TARGET.lock. */
+    LockFile(File target) {
+        this.target = target;
+        lock = new File(target.getPath() + SUFFIX);
+        try {
+            channel = create(lock);
+        } catch (FileAlreadyExistsException excp) {
+            if (repoLock == null) {
+                throw new GitletException("Unable to create " + lock
+                        + ": another gitlet command is updating it.");
+            }
+            lock.delete();
+            try {
+                channel = create(lock);
+            } catch (IOException excp2) {
+                throw new IllegalArgumentException(excp2.getMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replaces the contents of TARGET with CONTENTS, through a lock. */
+    static void replace(File target, byte[] contents) {
+        LockFile l = new LockFile(target);
+        try {
+            l.write(contents);
+            l.commit();
+        } catch (RuntimeException excp) {
+            l.rollback();
+            throw excp;
+        }
+    }
+
+    /** Replaces the contents of TARGET with the UTF-8 bytes of
+     *  CONTENTS, through a lock. */
+    static void replace(File target, String contents) {
+        replace(target, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Cuts TARGET back to its first KEEP bytes, dropping whatever an
+     *  append that a crash cut short left after them, then appends
+     *  CONTENTS and flushes TARGET to disk. TARGET is not replaced, so
+     *  this is only for files changed under the repository lock. */
+    static void append(File target, long keep, byte[] contents) {
+        try (FileChannel ch = FileChannel.open(target.toPath(),
+                StandardOpenOption.WRITE)) {
+            ch.truncate(keep);
+            ch.position(keep);
+            ByteBuffer b = ByteBuffer.wrap(contents);
+            while (b.hasRemaining()) {
+                ch.write(b);
+            }
+            ch.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes CONTENTS to the lock and flushes them to disk. */
+    void write(byte[] contents) {
+        try {
+            ByteBuffer b = ByteBuffer.wrap(contents);
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes what was written the contents of the target, after
+     *  flushing every object written so far. */
+    void commit() {
+        syncWritten();
+        try {
+            channel.close();
+            Files.move(lock.toPath(), target.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    /** Abandons the update, leaving the target as it was. */
+    void rollback() {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            lock.delete();
+            return;
+        }
+        lock.delete();
+    }
+
+    /* OBJECTS */
+
+    /** Records that the object file F was written and must reach the
+     *  disk before any ref is updated. */
+    static synchronized void written(File f) {
+        UNSYNCED.add(f.getAbsoluteFile());
+    }
+
+    /** Flushes every object file recorded by written, and the
+     *  directories holding them, to disk. */
+    @SuppressWarnings("try")
+    static void syncWritten() {
+        try (Trace.Span s = Trace.begin("sync")) {
+            syncAll();
+        }
+    }
+
+    /** Flushes the files recorded by written, as syncWritten does,
+     *  untimed. */
+    private static void syncAll() {
+        List<File> files;
+        synchronized (LockFile.class) {
+            files = new ArrayList<>(UNSYNCED);
+            UNSYNCED.clear();
+        }
+        Set<File> dirs = new LinkedHashSet<>();
+        for (File f : files) {
+            dirs.add(f.getParentFile());
+        }
+        Workers.map(files, f -> {
+            try (FileChannel ch = FileChannel.open(f.toPath(),
+                    StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return null;
+        });
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+    }
+
+    /** Flushes the entries of directory DIR to disk, where the
+     *  platform allows it. */
+    static void syncDirectory(File dir) {
+        try (FileChannel ch = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /* THE REPOSITORY LOCK */
+
+    /** Takes the repository lock, waiting up to the timeout for another
+     *  command to finish with it. */
+    @SuppressWarnings("try")
+    static void lockRepository() {
+        try (Trace.Span s = Trace.begin("lock")) {
+            waitForLock();
+        }
+    }
+
+    /** Takes the repository lock, as lockRepository does, untimed. */
+    private static void waitForLock() {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(new File(REPO_LOCK).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            while (true) {
+                FileLock l = ch.tryLock();
+                if (l != null) {
+                    repoLock = l;
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new GitletException("Another gitlet command is "
+                            + "running in this repository.");
+                }
+                Thread.sleep(POLL);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitletException("Interrupted waiting for the lock.");
+        } finally {
+            if (repoLock == null && ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException excp) {
+                    /* Already failing; the lock was never taken. */
+                }
+            }
+        }
+    }
+
+    /** Releases the repository lock, if it is held. */
+    static void unlockRepository() {
+        if (repoLock == null) {
+            return;
+        }
+        try {
+            repoLock.release();
+            repoLock.channel().close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            repoLock = null;
+        }
+    }
+
+    /** Returns a new channel writing to F, which must not exist. */
+    private static FileChannel create(File f) throws IOException {
+        return FileChannel.open(f.toPath(), StandardOpenOption.CREATE_NEW,
+                                StandardOpenOption.WRITE);
+    }
+
+    /** Returns the lock timeout in milliseconds. */
+    private static long timeout() {
+        String n = System.getenv("GITLET_LOCK_TIMEOUT");
+        if (n != null && n.matches("[0-9]+")) {
+            return Long.parseLong(n);
+        }
+        return DEFAULT_TIMEOUT;
+    }
+
+    /** The file being replaced. */
+    private final File target;
+
+    /** Its lock file, holding the new contents. */
+    private final File lock;
+
+    /** Writes to the lock file. */
+    private FileChannel channel;
+
+    /** Object files written but not yet flushed. */
+    private static final Set<File> UNSYNCED = new LinkedHashSet<>();
+
+    /** The repository lock while it is held, or null. */
+    private static FileLock repoLock;
+
+    /** A String representing the path to the repository lock. */
+    static final String REPO_LOCK = Main.GITLET + "lock";
+
+    /** Appended to a file's name to name its lock. */
+    static final String SUFFIX = ".lock";
+
+    /** Timeout used unless GITLET_LOCK_TIMEOUT says otherwise. */
+    private static final long DEFAULT_TIMEOUT = 5000;
+
+    /** Milliseconds to wait for the repository lock. */
+    static final long TIMEOUT = timeout();
+
+    /** Milliseconds between attempts to take the repository lock. */
+    private static final long POLL = 20;
+
+}
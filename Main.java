@@ -1,7 +1,10 @@
 package gitlet;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -17,7 +20,24 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
+        int status = run(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Runs the command in ARGS, printing its output or the message of
+     *  the GitletException it failed with, and returns the status to
+     *  exit with. Anything else it throws is a bug, and is passed on.
+     *  Commands that change the repository hold its lock while they
+     *  run. A leading --trace option traces the command, as Trace
+     *  describes. */
+    @SuppressWarnings("try")
+    static int run(String... args) {
+        String command = "";
         try {
+            args = Trace.options(args);
+            command = args.length > 0 ? args[0] : command;
             File g = new File(GITLET);
             if (args.length == 0) {
                 throw new GitletException("Please enter a command.");
@@ -25,15 +45,27 @@ public class Main {
                 String m = "Not in an initialized Gitlet directory.";
                 throw new GitletException(m);
             }
+            if (!READ_ONLY.contains(args[0])) {
+                LockFile.lockRepository();
+            }
 
             if (args.length > 1) {
                 doLongSwitch(args);
             } else {
                 doShortSwitch(args);
             }
+            try (Trace.Span s = Trace.begin("save stat cache")) {
+                StatCache.save();
+            }
+            ObjectCache.report();
+            return 0;
 
         } catch (GitletException e) {
             System.out.println(e.getMessage());
+            return e.status();
+        } finally {
+            LockFile.unlockRepository();
+            Trace.finish(command);
         }
     }
 
@@ -53,10 +85,8 @@ public class Main {
         } else if (args.length == 4 && !args[2].equals("--")) {
             throw new GitletException("Incorrect operands.");
         } else if (args.length == 2) {
-            File curr = new File(BRANCHES + S + "current");
-            String currBranch = readContentsAsString(curr);
-            File branchName = new File(BRANCHES + S + args[1]);
-            if (!branchName.exists()) {
+            String currBranch = Refs.current();
+            if (!Refs.exists(args[1])) {
                 throw new GitletException("No such branch exists.");
             } else if (args[1].equals(currBranch)) {
                 String m = "No need to checkout the current branch.";
@@ -70,22 +100,16 @@ public class Main {
     static void validMerge(String... args) {
         validArgs(2, args);
 
-        File active = new File(BRANCHES + S + "current");
-        String currBranchName = readContentsAsString(active);
-        if (currBranchName.equals(args[1])) {
+        if (Refs.current().equals(args[1])) {
             throw new GitletException("Cannot merge a branch with itself.");
         }
 
-        File branch = new File(BRANCHES + S + args[1]);
-        if (!branch.exists()) {
+        if (!Refs.exists(args[1])) {
             String m = "A branch with that name does not exist.";
             throw new GitletException(m);
         }
 
-        Stage st = readObject(new File(STAGE), Stage.class);
-        File removed = new File(GITLET + S + "removed");
-        RemovedSet r = readObject(removed, RemovedSet.class);
-        if (!st.index().isEmpty() || !r.removed().isEmpty()) {
+        if (Index.read().hasChanges()) {
             throw new GitletException("You have uncommitted changes.");
         }
     }
@@ -109,6 +133,34 @@ public class Main {
             validArgs(1, args);
             doStatus();
             break;
+        case "pack":
+            validArgs(1, args);
+            doPack();
+            break;
+        case "migrate":
+            validArgs(1, args);
+            doMigrate();
+            break;
+        case "reflog":
+            validArgs(1, args);
+            doReflog(null);
+            break;
+        case "diff":
+            validArgs(1, args);
+            doDiff();
+            break;
+        case "gc":
+            validArgs(1, args);
+            GarbageCollector.collect();
+            break;
+        case "fsck":
+            validArgs(1, args);
+            Fsck.check();
+            break;
+        case "daemon":
+            validArgs(1, args);
+            Daemon.serve();
+            break;
         default:
             throw new GitletException("No command with that name exists.");
         }
@@ -118,10 +170,7 @@ public class Main {
     static void doLongSwitch(String... args) {
         switch (args[0]) {
         case "add":
-            validArgs(2, args);
-            String curr = System.getProperty("user.dir");
-            File toAdd = new File(curr + S + args[1]);
-            doAdd(toAdd, args[1]);
+            doAdd(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit":
             if (args.length == 1 || args[1].equals("")) {
@@ -140,6 +189,21 @@ public class Main {
             validArgs(2, args);
             doFind(args[1]);
             break;
+        case "diff":
+            if (args.length == 2 && args[1].equals("--staged")) {
+                doDiffStaged();
+            } else {
+                validArgs(3, args);
+                doDiffCommits(args[1], args[2]);
+            }
+            break;
+        case "reflog":
+            validArgs(2, args);
+            if (!Refs.exists(args[1])) {
+                throw new GitletException("No such branch exists.");
+            }
+            doReflog(args[1]);
+            break;
         case "checkout":
             validCheckoutArgs(args);
             doCheckout(args);
@@ -162,6 +226,13 @@ public class Main {
             validMerge(args);
             doMerge(args[1]);
             break;
+        case "daemon":
+            if (!args[1].equals("stop")) {
+                throw new GitletException("Incorrect operands.");
+            }
+            validArgs(2, args);
+            Daemon.stop();
+            break;
         default:
             throw new GitletException("No command with that name exists.");
         }
@@ -174,118 +245,157 @@ public class Main {
             String m2 = "exists in the current directory.";
             throw new GitletException(m1 + m2);
         } else {
-            File stageFile = new File(STAGE);
             File branchesFile = new File(BRANCHES);
             File blobsFile = new File(BLOBS);
             File commitsFile = new File(COMMITS);
+            File treesFile = new File(TREES);
 
             (new File(GITLET)).mkdir();
-            Utils.writeObject(stageFile, new Stage());
+            new Index().write();
             branchesFile.mkdir();
             blobsFile.mkdir();
             commitsFile.mkdir();
+            treesFile.mkdir();
 
             Commit initial = new Commit();
-            File firstCommit = new File(COMMITS + S + initial.shaCode());
-            Utils.writeObject(firstCommit, initial);
+            initial.write();
+            CommitGraph.append(initial);
+            CommitCatalog.append(initial);
 
-            File master = new File(BRANCHES + S + "master");
-            Utils.writeContents(master, initial.shaCode());
-            File currBranch = new File(BRANCHES + S + "current");
-            Utils.writeContents(currBranch, "master");
+            LockFile.replace(new File(Refs.HEAD), "master");
+            Refs.update("master", initial.shaCode(),
+                        "commit (initial): " + initial.message());
         }
     }
 
-    /** Performs the add command. Adds file F with
-     * name NAME to the stage. */
-    static void doAdd(File f, String name) {
-        if (!f.exists()) {
-            throw new GitletException("File does not exist.");
+    /** Performs the add command. Adds every file named by
+     * PATTERNS to the stage. Each pattern is a file name, a glob
+     * such as *.txt, or -A for every file in the working
+     * directory (which also stages the removal of tracked
+     * files that have been deleted). */
+    static void doAdd(String... patterns) {
+        String curr = System.getProperty("user.dir");
+        List<String> present = workingFiles();
+        TreeMap<String, File> toAdd = new TreeMap<>();
+        boolean all = false;
+        for (String pattern : patterns) {
+            if (pattern.equals("-A")) {
+                all = true;
+                for (String name : present) {
+                    if (!name.equals(".DS_Store")) {
+                        toAdd.put(name, new File(curr + S + name));
+                    }
+                }
+            } else if (isGlob(pattern)) {
+                PathMatcher m = FileSystems.getDefault()
+                        .getPathMatcher("glob:" + pattern);
+                boolean matched = false;
+                for (String name : present) {
+                    if (m.matches(Paths.get(name))) {
+                        toAdd.put(name, new File(curr + S + name));
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    throw new GitletException("File does not exist.");
+                }
+            } else {
+                File f = new File(curr + S + pattern);
+                if (!f.exists()) {
+                    throw new GitletException("File does not exist.");
+                } else if (f.isDirectory()) {
+                    String dir = pattern.replace(File.separatorChar, '/')
+                            .replaceAll("/*$", "/");
+                    for (String name : present) {
+                        if (name.startsWith(dir) || dir.equals("./")) {
+                            toAdd.put(name, new File(curr + S + name));
+                        }
+                    }
+                } else {
+                    toAdd.put(pattern.replace(File.separatorChar, '/'), f);
+                }
+            }
         }
 
-        File stageFile = new File(STAGE);
+        Index index = Index.read();
+        index.addAll(toAdd);
+        if (all) {
+            TreeSet<String> gone = new TreeSet<>(index.added().keySet());
+            gone.addAll(Commit.getLastCommit().data().keySet());
+            gone.removeAll(present);
+            gone.removeAll(index.removed());
+            for (String name : gone) {
+                index.remove(new File(curr + S + name), name);
+            }
+        }
+        index.write();
+    }
 
-        Stage index = Utils.readObject(stageFile, Stage.class);
-        index.add(f, name);
-        Utils.writeObject(stageFile, index);
+    /** Returns true if PATTERN contains glob metacharacters. */
+    static boolean isGlob(String pattern) {
+        return pattern.matches(".*[*?\\[{].*");
     }
 
     /** Performs the rm command. Removes file F with
      * name NAME from the stage. */
     static void doRemove(File f, String name) {
-        File stageFile = new File(STAGE);
-
-        Stage index = Utils.readObject(stageFile, Stage.class);
+        Index index = Index.read();
         index.remove(f, name);
-        Utils.writeObject(stageFile, index);
+        index.write();
     }
 
     /** Performs the commit command. Makes a commit
      * object with MESSAGE. */
     static void doCommit(String message) {
-        File removed = new File(GITLET + S + "removed");
-        RemovedSet r = readObject(removed, RemovedSet.class);
-        if (Commit.getStaged().index().isEmpty() && r.removed().isEmpty()) {
+        Index index = Index.read();
+        if (!index.hasChanges()) {
             throw new GitletException("No changes added to the commit.");
         }
 
-        File active = new File(BRANCHES + S + "current");
-        String currBranchName = readContentsAsString(active);
-        File currBranch = new File(BRANCHES + S + currBranchName);
-
-        String lastCommit = readContentsAsString(currBranch);
-
-        Commit c = new Commit(message, lastCommit);
-        File newCommit = new File(COMMITS + S + c.shaCode());
+        String currBranchName = Refs.current();
+        String lastCommit = Refs.get(currBranchName);
 
-        Utils.writeObject(newCommit, c);
+        Commit c = new Commit(message, lastCommit, index);
+        c.write();
+        CommitGraph.append(c);
+        CommitCatalog.append(c);
 
-        File newBranch = new File(BRANCHES + S + currBranchName);
-        Utils.writeContents(newBranch, c.shaCode());
+        Refs.update(currBranchName, c.shaCode(), "commit: " + message);
 
-        RemovedSet newR = new RemovedSet();
-        Utils.writeObject(removed, newR);
-
-        Utils.writeObject(new File(STAGE), new Stage());
+        new Index().write();
 
     }
 
     /** Performs the branch command. Creates a
      * branch with NAME. */
     static void doBranch(String name) {
-        File b = new File(BRANCHES + S + name);
-        if (b.exists()) {
+        if (Refs.exists(name)) {
             String m = "A branch with that name already exists.";
             throw new GitletException(m);
         }
 
-        File active = new File(BRANCHES + S + "current");
-        String currBranchName = readContentsAsString(active);
-        File currBranch = new File(BRANCHES + S + currBranchName);
-
-        String lastCommit = readContentsAsString(currBranch);
+        String currBranchName = Refs.current();
+        String lastCommit = Refs.get(currBranchName);
 
-        File newBranch = new File(BRANCHES + S + name);
-        Utils.writeContents(newBranch, lastCommit);
+        Refs.update(name, lastCommit, "branch: Created from "
+                    + currBranchName);
     }
 
     /** Performs the rm-branch command. Removes
      * branch with NAME. */
     static void doRemoveBranch(String name) {
-        File active = new File(BRANCHES + S + "current");
-        String currBranchName = readContentsAsString(active);
+        String currBranchName = Refs.current();
 
         if (currBranchName.equals(name)) {
             throw new GitletException("Cannot remove the current branch.");
         }
 
-        File removeBranch = new File(BRANCHES + S + name);
-        if (!removeBranch.exists()) {
+        if (!Refs.exists(name)) {
             String m = "A branch with that name does not exist.";
             throw new GitletException(m);
         }
 
-        removeBranch.delete();
+        Refs.delete(name);
 
     }
 
@@ -306,64 +416,46 @@ public class Main {
      * Takes in ARGS input by the user. */
     static void checkoutFile(String... args) {
         Commit c = Commit.getLastCommit();
+        String blobFileName = c.data().get(args[2]);
 
-        if (!c.data().containsKey(args[2])) {
+        if (blobFileName == null) {
             String m = "File does not exist in that commit.";
             throw new GitletException(m);
         } else {
-            String blobFileName = c.data().get(args[2]);
-            File blobFile = new File(BLOBS + S + blobFileName);
-            Blob b = readObject(blobFile, Blob.class);
-
-            String curr = System.getProperty("user.dir");
-            String contents = new String(b.fileContents(),
-                    StandardCharsets.UTF_8);
-            File dest = new File(curr + S + args[2]);
-            writeContents(dest, contents);
+            Checkout.write(args[2], blobFileName);
         }
     }
 
-    /** A helper method for the doCheckout method.
-     * Takes in ARGS input by the user. */
-    static void checkoutID(String... args) {
-        File lastCommit = null;
-
-        if (args[1].length() < UID_LENGTH) {
-            List<String> allCommits = plainFilenamesIn(COMMITS);
-            boolean foundCommit = false;
-            for (String commit : allCommits) {
-                String temp = commit.substring(0, args[1].length());
-                if (temp.equals(args[1])) {
-                    foundCommit = true;
-                    lastCommit = new File(COMMITS + S + commit);
-                    break;
-                }
-            }
-            if (!foundCommit) {
+    /** Returns the full id of the commit named ID, which may be
+     * abbreviated to any unique prefix. */
+    static String resolveCommitId(String id) {
+        if (id.length() >= UID_LENGTH) {
+            if (!Commit.exists(id)) {
                 throw new GitletException("No commit with that id exists.");
             }
-        } else {
-            lastCommit = new File(COMMITS + S + args[1]);
+            return id;
         }
-
-        if (!lastCommit.exists()) {
+        List<String> matches = CommitIndex.matching(id);
+        if (matches.isEmpty()) {
             throw new GitletException("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw new GitletException("Commit id " + id + " is ambiguous.");
         }
+        return matches.get(0);
+    }
 
-        Commit c = readObject(lastCommit, Commit.class);
+    /** A helper method for the doCheckout method.
+     * Takes in ARGS input by the user. */
+    static void checkoutID(String... args) {
+        String lastCommit = resolveCommitId(args[1]);
+        Commit c = Commit.read(lastCommit);
+        String blobFileName = c.data().get(args[3]);
 
-        if (!c.data().containsKey(args[3])) {
+        if (blobFileName == null) {
             String m = "File does not exist in that commit.";
             throw new GitletException(m);
         } else {
-            String blobFileName = c.data().get(args[3]);
-            File blobFile = new File(BLOBS + S + blobFileName);
-            Blob b = readObject(blobFile, Blob.class);
-
-            String contents = new String(b.fileContents(),
-                    StandardCharsets.UTF_8);
-            File dest = new File(System.getProperty("user.dir") + S + args[3]);
-            writeContents(dest, contents);
+            Checkout.write(args[3], blobFileName);
         }
     }
 
@@ -371,408 +463,328 @@ public class Main {
      * Takes in ARGS input by the user. */
     static void checkoutBranch(String... args) {
         untrackedFileCheck();
-        File destBranch = new File(BRANCHES + S + args[1]);
-        String branchCommitName = readContentsAsString(destBranch);
-        File branchCommit = new File(COMMITS + S + branchCommitName);
-        Commit c = Utils.readObject(branchCommit, Commit.class);
-
-        HashMap<String, String> blobCodes = c.data();
-
-        File currDir = new File(System.getProperty("user.dir"));
-        List<String> currFiles = plainFilenamesIn(currDir);
-        if (currFiles != null) {
-            for (String name : currFiles) {
-                if (!blobCodes.containsKey(name)) {
-                    String curr = System.getProperty("user.dir");
-                    File temp = new File(curr + S + name);
-                    restrictedDelete(temp);
-                }
-            }
-        }
-
-        if (!blobCodes.isEmpty()) {
-            for (String filename : blobCodes.keySet()) {
-                String shaCode = blobCodes.get(filename);
-                File blobFile = new File(BLOBS + S + shaCode);
-                Blob b = readObject(blobFile, Blob.class);
-
-                String curr = System.getProperty("user.dir");
-                String contents = new String(b.fileContents(),
-                        StandardCharsets.UTF_8);
-                File dest = new File(curr + S + filename);
-                writeContents(dest, contents);
-            }
-        }
+        String branchCommitName = Refs.get(args[1]);
+        Commit c = Commit.read(branchCommitName);
 
-        File currBranchHolder = new File(BRANCHES + S + "current");
-        File removed = new File(GITLET + S + "removed");
+        Checkout.materialize(Commit.getLastCommit().data(), c.data());
 
-        writeContents(currBranchHolder, args[1]);
-        writeObject(new File(STAGE), new Stage());
-        writeObject(removed, new RemovedSet());
+        Refs.setCurrent(args[1]);
+        new Index().write();
 
     }
 
     /** Performs the log command. */
     static void doLog() {
-        Commit last = Commit.getLastCommit();
-        while (last.parent() != null) {
-            System.out.println("===");
-            System.out.println("commit " + last.shaCode());
-            if (last.secondParent() != null) {
-                String parent1 = last.parent().substring(0, 8);
-                String parent2 = last.secondParent().substring(0, 8);
-                System.out.println("Merge: " + parent1 + " " + parent2);
-            }
-
-            ZoneId oldZone = ZoneId.of("UTC");
-            ZoneId newZone = ZoneId.of("America/Los_Angeles");
-            ZonedDateTime converted = last.time().atZone(oldZone)
-                    .withZoneSameInstant(newZone);
-            System.out.printf("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz",
-                    converted);
-            System.out.println("");
-            System.out.println(last.message());
-            System.out.println("");
+        String head = Commit.getLastCommitSha();
+        CommitGraph graph = CommitGraph.covering(head);
+        for (int i = graph.indexOf(head); i != CommitGraph.NONE;
+             i = graph.parent(i)) {
+            printLogEntry(Commit.read(graph.sha(i)));
+        }
+    }
 
-            File parent = new File(COMMITS + S + last.parent());
-            last = readObject(parent, Commit.class);
+    /** Performs the global-log command. */
+    static void doGlobalLog() {
+        CommitCatalog catalog = CommitCatalog.load();
+        for (int i = 0; i < catalog.size(); i += 1) {
+            printLogEntry(catalog.sha(i), catalog.parent(i),
+                          catalog.secondParent(i), catalog.time(i),
+                          catalog.message(i));
         }
+
+    }
+
+    /** Prints the log entry for commit C. */
+    static void printLogEntry(Commit c) {
+        printLogEntry(c.shaCode(), c.parent(), c.secondParent(), c.time(),
+                      c.message());
+    }
+
+    /** Prints the log entry for the commit SHA with parents PARENT and
+     *  SECONDPARENT, made at TIME (UTC) with MESSAGE. */
+    static void printLogEntry(String sha, String parent,
+                              String secondParent, LocalDateTime time,
+                              String message) {
         System.out.println("===");
-        System.out.println("commit " + last.shaCode());
+        System.out.println("commit " + sha);
+        if (secondParent != null) {
+            String parent1 = parent.substring(0, 8);
+            String parent2 = secondParent.substring(0, 8);
+            System.out.println("Merge: " + parent1 + " " + parent2);
+        }
 
         ZoneId oldZone = ZoneId.of("UTC");
         ZoneId newZone = ZoneId.of("America/Los_Angeles");
-        ZonedDateTime converted = last.time().atZone(oldZone)
+        ZonedDateTime converted = time.atZone(oldZone)
                 .withZoneSameInstant(newZone);
         System.out.printf("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz",
                 converted);
         System.out.println("");
-        System.out.println(last.message());
+        System.out.println(message);
         System.out.println("");
     }
 
-    /** Performs the global-log command. */
-    static void doGlobalLog() {
-        File[] commitFiles = (new File(COMMITS)).listFiles();
-        if (commitFiles == null) {
-            return;
-        }
-        for (File f : commitFiles) {
-            Commit c = readObject(f, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + c.shaCode());
-            if (c.secondParent() != null) {
-                String parent1 = c.parent().substring(0, 8);
-                String parent2 = c.secondParent().substring(0, 8);
-                System.out.println("Merge: " + parent1 + " " + parent2);
-            }
-
-            ZoneId oldZone = ZoneId.of("UTC");
-            ZoneId newZone = ZoneId.of("America/Los_Angeles");
-            ZonedDateTime converted = c.time().atZone(oldZone)
-                    .withZoneSameInstant(newZone);
-            System.out.printf("Date: %1$ta %1$tb %1$td %1$tT %1$tY %1$tz",
-                    converted);
-            System.out.println("");
-            System.out.println(c.message());
-            System.out.println("");
-        }
-
-    }
-
     /** Performs the status command. */
     static void doStatus() {
         System.out.println("=== Branches ===");
-        File active = new File(BRANCHES + S + "current");
-        String currBranchName = readContentsAsString(active);
-        for (String branchName : plainFilenamesIn(new File(BRANCHES))) {
+        String currBranchName = Refs.current();
+        for (String branchName : Refs.all().keySet()) {
             if (branchName.equals(currBranchName)) {
                 System.out.print("*");
             }
-            if (!branchName.equals("current")) {
-                System.out.println(branchName);
-            }
+            System.out.println(branchName);
         }
         System.out.println("");
 
         System.out.println("=== Staged Files ===");
-        Stage currStage = readObject(new File(STAGE), Stage.class);
-        Object[] keys = currStage.index().keySet().toArray();
-        Arrays.sort(keys);
-        for (Object key : keys) {
+        Index index = Index.read();
+        Map<String, String> staged = index.added();
+        Set<String> removed = index.removed();
+        for (String key : staged.keySet()) {
             System.out.println(key);
         }
         System.out.println("");
 
         System.out.println("=== Removed Files ===");
-        File removed = new File(GITLET + S + "removed");
-        RemovedSet r = readObject(removed, RemovedSet.class);
-        Object[] names = r.removed().toArray();
-        Arrays.sort(names);
-        for (Object key : names) {
+        for (String key : removed) {
             System.out.println(key);
         }
         System.out.println("");
 
+        Map<String, String> tracked = Commit.getLastCommit().data();
+        String cwd = System.getProperty("user.dir");
+        TreeMap<String, String> modified = new TreeMap<>();
+        for (String name : tracked.keySet()) {
+            if (!staged.containsKey(name) && !removed.contains(name)) {
+                File f = new File(cwd + S + name);
+                if (!f.exists()) {
+                    modified.put(name, "deleted");
+                } else if (!StatCache.hash(f, name)
+                        .equals(tracked.get(name))) {
+                    modified.put(name, "modified");
+                }
+            }
+        }
+        for (String name : staged.keySet()) {
+            File f = new File(cwd + S + name);
+            if (!f.exists()) {
+                modified.put(name, "deleted");
+            } else if (!StatCache.hash(f, name).equals(staged.get(name))) {
+                modified.put(name, "modified");
+            }
+        }
+        for (String name : index.conflicted()) {
+            modified.put(name, "conflicted");
+        }
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String name : modified.keySet()) {
+            System.out.println(name + " (" + modified.get(name) + ")");
+        }
         System.out.println("");
+
         System.out.println("=== Untracked Files ===");
+        for (String name : workingFiles()) {
+            if (!name.equals(".DS_Store")
+                    && !staged.containsKey(name)
+                    && (!tracked.containsKey(name)
+                        || removed.contains(name))) {
+                System.out.println(name);
+            }
+        }
+    }
+
+    /** Performs the diff command. Prints the changes in the
+     * working directory that are not staged, as a unified diff. */
+    static void doDiff() {
+        String cwd = System.getProperty("user.dir");
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> e : stagedFiles().entrySet()) {
+            String name = e.getKey();
+            File f = new File(cwd + S + name);
+            if (!f.exists()) {
+                Diff.file(out, name, BlobStore.read(e.getValue()), null);
+            } else if (!StatCache.hash(f, name).equals(e.getValue())) {
+                Diff.file(out, name, BlobStore.read(e.getValue()),
+                          readContents(f));
+            }
+        }
+        System.out.print(out);
+    }
+
+    /** Performs the diff --staged command. Prints the changes
+     * staged for the next commit, as a unified diff. */
+    static void doDiffStaged() {
+        Map<String, String> head = Commit.getLastCommit().data();
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Map<String, String> staged = stagedFiles();
+        for (Map.Entry<String, String> e : staged.entrySet()) {
+            String before = head.get(e.getKey());
+            if (!e.getValue().equals(before)) {
+                changes.put(e.getKey(), new String[] {before, e.getValue()});
+            }
+        }
+        for (String name : head.keySet()) {
+            if (!staged.containsKey(name)) {
+                changes.put(name, new String[] {head.get(name), null});
+            }
+        }
+        printBlobDiffs(changes);
+    }
+
+    /** Performs the diff command on two commits. Prints the
+     * changes from the commit with id FROM to the one with id
+     * TO, as a unified diff, comparing only the trees that
+     * differ between them. */
+    static void doDiffCommits(String from, String to) {
+        Commit a = Commit.read(resolveCommitId(from));
+        Commit b = Commit.read(resolveCommitId(to));
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(a.treeSha(), b.treeSha(), changes);
+        printBlobDiffs(changes);
+    }
+
+    /** Prints a unified diff of each path in CHANGES from the
+     * first blob it maps to to the second, either of which is
+     * null for a missing file. */
+    static void printBlobDiffs(Map<String, String[]> changes) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String[] blobs = e.getValue();
+            Diff.file(out, e.getKey(),
+                      blobs[0] == null ? null : BlobStore.read(blobs[0]),
+                      blobs[1] == null ? null : BlobStore.read(blobs[1]));
+        }
+        System.out.print(out);
+    }
+
+    /** Returns the files of the head commit as staging would
+     * leave them, by name, mapped to their blobs' shaCodes. */
+    static Map<String, String> stagedFiles() {
+        Index index = Index.read();
+        TreeMap<String, String> files =
+            new TreeMap<>(Commit.getLastCommit().data());
+        files.putAll(index.added());
+        files.keySet().removeAll(index.removed());
+        return files;
     }
 
     /** Performs the find command. Finds any commits that
      * contain MESSAGE. */
     static void doFind(String message) {
-        boolean found = false;
-        File[] commitFiles = (new File(COMMITS)).listFiles();
-        if (commitFiles != null) {
-            for (File f : commitFiles) {
-                Commit c = readObject(f, Commit.class);
-                if (message.equals(c.message())) {
-                    System.out.println(c.shaCode());
-                    found = true;
-                }
-            }
+        CommitCatalog catalog = CommitCatalog.load();
+        List<Integer> found = catalog.find(message);
+        for (int i : found) {
+            System.out.println(catalog.sha(i));
         }
-        if (!found) {
+        if (found.isEmpty()) {
             throw new GitletException("Found no commit with that message.");
         }
     }
 
+    /** Performs the pack command. Bundles every object into
+     * a single packfile, and every branch into packed-refs. */
+    static void doPack() {
+        int[] counts = PackFile.packAll();
+        System.out.println("Packed " + counts[0] + " objects, "
+                + counts[1] + " as deltas.");
+        System.out.println("Packed " + Refs.pack() + " branches.");
+    }
+
+    /** Performs the reflog command. Prints how branch NAME,
+     * or the current branch if NAME is null, has moved,
+     * newest move first. */
+    static void doReflog(String name) {
+        List<Refs.LogEntry> entries = Refs.reflog(name);
+        String label = name == null ? "HEAD" : name;
+        for (int i = 0; i < entries.size(); i += 1) {
+            Refs.LogEntry e = entries.get(i);
+            System.out.println(e.sha + " " + label + "@{" + i + "}: "
+                               + e.message);
+        }
+    }
+
+    /** Performs the migrate command. Moves objects stored
+     * flat by earlier versions of Gitlet into fan-out
+     * directories. */
+    static void doMigrate() {
+        int moved = ObjectPath.migrate(COMMITS) + ObjectPath.migrate(TREES)
+            + ObjectPath.migrate(BLOBS);
+        System.out.println("Moved " + moved + " objects.");
+    }
+
     /** Performs the reset command. Resets the working
      * directory to the contents of the commit with
      * COMMITID. */
     static void doReset(String commitID) {
-        File lastCommit = null;
-
-        if (commitID.length() < UID_LENGTH) {
-            List<String> allCommits = plainFilenamesIn(COMMITS);
-            boolean foundCommit = false;
-            for (String commit : allCommits) {
-                String temp = commit.substring(0, commitID.length());
-                if (temp.equals(commitID)) {
-                    foundCommit = true;
-                    lastCommit = new File(COMMITS + S + commit);
-                    break;
-                }
-            }
-            if (!foundCommit) {
-                throw new GitletException("No commit with that id exists.");
-            }
-        } else {
-            lastCommit = new File(COMMITS + S + commitID);
-        }
-
-        if (!lastCommit.exists()) {
-            throw new GitletException("No commit with that id exists.");
-        }
+        String lastCommit = resolveCommitId(commitID);
+        resetTo(lastCommit, "reset: moving to " + lastCommit);
+    }
 
-        Commit c = readObject(lastCommit, Commit.class);
+    /** Checks out the commit with shaCode SHA and moves the
+     * current branch to it, logging the move with REASON. */
+    static void resetTo(String sha, String reason) {
+        Commit c = Commit.read(sha);
         Commit curr = Commit.getLastCommit();
 
-        File currDirFile = new File(System.getProperty("user.dir"));
-        List<String> currFiles = plainFilenamesIn(currDirFile);
-        if (currFiles != null) {
-            for (String name : currFiles) {
-                if (!c.data().containsKey(name)
-                        && curr.data().containsKey(name)) {
-                    String currDir = System.getProperty("user.dir");
-                    File temp = new File(currDir + S + name);
-                    restrictedDelete(temp);
-                }
-            }
-        }
-
-        for (String name : c.data().keySet()) {
-            String b = c.data().get(name);
-            File blobFile = new File(BLOBS + S + b);
-            Blob blobby = readObject(blobFile, Blob.class);
+        Checkout.materialize(curr.data(), c.data());
 
-            String contents = new String(blobby.fileContents(),
-                    StandardCharsets.UTF_8);
-            File dest = new File(System.getProperty("user.dir") + S + name);
-            writeContents(dest, contents);
-        }
-
-        File currBranchFile = new File(BRANCHES + S + "current");
-        String currBranchName = readContentsAsString(currBranchFile);
-        File currBranch = new File(BRANCHES + S + currBranchName);
-        writeContents(currBranch, commitID);
+        Refs.update(Refs.current(), sha, reason);
     }
 
     /** Performs the merge command. Merges branch
      * BRANCHNAME into the current branch. */
     static void doMerge(String branchName) {
-        HashMap<String, String> newContents = new HashMap<>();
-
-        File splitFile = new File(COMMITS + S + findSplitPoint(branchName));
-        File branchFile = new File(BRANCHES + S + branchName);
-        String otherSha = readContentsAsString(branchFile);
-        File otherCommit = new File(COMMITS + S + otherSha);
-        Commit split = readObject(splitFile, Commit.class);
-        Commit other = readObject(otherCommit, Commit.class);
+        String otherSha = Refs.get(branchName);
+        Commit split = Commit.read(findSplitPoint(branchName));
+        Commit other = Commit.read(otherSha);
         Commit curr = Commit.getLastCommit();
 
-        Set<String> otherNames = other.data().keySet();
-        Set<String> currNames = curr.data().keySet();
-
-
         if (split.shaCode().equals(other.shaCode())) {
             String m = "Given branch is an ancestor of the current branch.";
             System.out.println(m);
             return;
         } else if (split.shaCode().equals(curr.shaCode())) {
-            doReset(other.shaCode());
+            resetTo(other.shaCode(), "merge " + branchName
+                    + ": Fast-forward");
             System.out.println("Current branch fast-forwarded.");
             return;
         }
 
-        if (split.data() != null) {
-            Set<String> splitNames = split.data().keySet();
-            for (String name : splitNames) {
-                if (currNames.contains(name) && otherNames.contains(name)) {
-                    if (curr.data().get(name).equals(other.data().get(name))) {
-                        newContents.put(name, curr.data().get(name));
-                        currNames.remove(name);
-                        otherNames.remove(name);
-                    } else if (curr.data().get(name)
-                            .equals(split.data().get(name))) {
-                        checkoutID("checkout", other.shaCode(), "--", name);
-                        newContents.put(name, other.data().get(name));
-                        String c = System.getProperty("user.dir");
-                        File dest = new File(c + S + name);
-                        otherNames.remove(name);
-                        currNames.remove(name);
-                    } else if (other.data().get(name)
-                            .equals(split.data().get(name))) {
-                        newContents.put(name, other.data().get(name));
-                        otherNames.remove(name);
-                        currNames.remove(name);
-                    }
-                } else if (currNames.contains(name)) {
-                    if (curr.data().get(name).equals(split.data().get(name))) {
-                        String c = System.getProperty("user.dir");
-                        File dest = new File(c + S + name);
-                        restrictedDelete(dest);
-                        currNames.remove(name);
-                    }
-                } else if (otherNames.contains(name)) {
-                    if (other.data().get(name).equals(split.data().get(name))) {
-                        otherNames.remove(name);
-                    }
-                }
-            }
-        }
-        List<String> toRemove1 = new ArrayList<>();
-        for (String name : currNames) {
-            if (other.data().get(name) == null) {
-                toRemove1.add(name);
-                newContents.put(name, curr.data().get(name));
-            } else if (curr.data().get(name).equals(other.data().get(name))) {
-                newContents.put(name, curr.data().get(name));
-                currNames.remove(name);
-                otherNames.remove(name);
-            }
-        }
-        currNames.removeAll(toRemove1);
-
-        List<String> toRemove2 = new ArrayList<>();
-        for (String name : otherNames) {
-            if (curr.data().get(name) == null) {
-                checkoutID("checkout", other.shaCode(), "--", name);
-                newContents.put(name, other.data().get(name));
-                toRemove2.add(name);
-                File dest = new File(System.getProperty("user.dir") + S + name);
-            }
-        }
-        otherNames.removeAll(toRemove2);
-
-        String top = "<<<<<<< HEAD" + "\n";
-        String middle = "=======" + "\n";
-        String bottom = ">>>>>>>" + "\n";
-        boolean isConflict = !currNames.isEmpty() || !otherNames.isEmpty();
-
-        for (String name : currNames) {
-            File dest = new File(System.getProperty("user.dir") + S + name);
-
-            Blob bCurr = getBlob(curr.data().get(name));
-            String currContents = new String(bCurr.fileContents(),
-                    StandardCharsets.UTF_8);
-
-            String otherContents = "";
-            if (other.data().get(name) != null) {
-                Blob bOther = getBlob(other.data().get(name));
-                otherContents = new String(bOther.fileContents(),
-                        StandardCharsets.UTF_8);
-                otherNames.remove(name);
-            }
-
-            writeContents(dest, top, currContents,
-                    middle, otherContents, bottom);
-
-            Blob merged = new Blob(dest);
-            File blobFile = new File(BLOBS + S + merged.shaCode());
-            writeObject(blobFile, merged);
-            newContents.put(name, merged.shaCode());
-        }
-
-        for (String name : otherNames) {
-            File dest = new File(System.getProperty("user.dir") + S + name);
-            Blob bOther = getBlob(other.data().get(name));
-
-            String otherContents = new String(bOther.fileContents(),
-                    StandardCharsets.UTF_8);
-
-            writeContents(dest, top, middle, otherContents, bottom);
-
-            Blob merged = new Blob(dest);
-            File blobFile = new File(BLOBS + S + merged.shaCode());
-            writeObject(blobFile, merged);
-            newContents.put(name, merged.shaCode());
-        }
+        MergePlan plan = new MergePlan(split.data(), curr.data(),
+                                       other.data());
+        plan.execute();
 
-        File active = new File(Main.BRANCHES + Main.S + "current");
-        String currBranchName = readContentsAsString(active);
+        String currBranchName = Refs.current();
         String m = "Merged " + branchName + " into " + currBranchName + ".";
         Commit mergeCommit = new Commit(m, curr.shaCode(),
-                other.shaCode(), newContents);
-        File mergeFile = new File(COMMITS + S + mergeCommit.shaCode());
-        writeObject(mergeFile, mergeCommit);
-        File currBranch = new File(BRANCHES + S + currBranchName);
-        writeContents(currBranch, mergeCommit.shaCode());
-
-        if (isConflict) {
+                other.shaCode(), plan.contents());
+        mergeCommit.write();
+        CommitGraph.append(mergeCommit);
+        CommitCatalog.append(mergeCommit);
+        Refs.update(currBranchName, mergeCommit.shaCode(),
+                    "merge " + branchName + ": " + m);
+
+        Index index = new Index();
+        for (String name : plan.conflicted()) {
+            index.markConflicted(name);
+        }
+        index.write();
+        if (!plan.conflicted().isEmpty()) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
-    /** Returns the blob object named BLOBSHA. */
-    static Blob getBlob(String blobSha) {
-        File blob = new File(BLOBS + S + blobSha);
-        return readObject(blob, Blob.class);
-    }
-
     /** Returns the split point between the current branch
-     * and BRANCHNAME. */
+     * and BRANCHNAME: their latest common ancestor, following
+     * both parents of merge commits. */
     static String findSplitPoint(String branchName) {
-        HashSet<String> currBranchCommits = new HashSet<>();
-        Commit c = Commit.getLastCommit();
-        while (c.parent() != null) {
-            currBranchCommits.add(c.shaCode());
-            c = c.getParent();
-        }
-        currBranchCommits.add(c.shaCode());
-
-        File givenBranchFile = new File(BRANCHES + S + branchName);
-        String commitName = readContentsAsString(givenBranchFile);
-        File commitFile = new File(COMMITS + S + commitName);
-        Commit c2 = readObject(commitFile, Commit.class);
-        while (true) {
-            if (currBranchCommits.contains(c2.shaCode())) {
-                return c2.shaCode();
-            }
-            c2 = c2.getParent();
-        }
+        String head = Commit.getLastCommitSha();
+        String commitName = Refs.get(branchName);
+        CommitGraph graph = CommitGraph.covering(head, commitName);
+
+        int split = MergeBase.find(graph, graph.indexOf(head),
+                graph.indexOf(commitName));
+        return graph.sha(split);
     }
 
     /** A shortname for the system-dependent
@@ -784,10 +796,6 @@ public class Main {
     static final String GITLET = System.getProperty("user.dir")
             + S + ".gitlet" + S;
 
-    /** A String representing the path to the
-     * stage file. */
-    static final String STAGE = GITLET + "stage";
-
     /** A String representing the path to the
      * branches directory. */
     static final String BRANCHES = GITLET + "branches";
@@ -800,4 +808,14 @@ public class Main {
      * commits directory. */
     static final String COMMITS = GITLET + "commits";
 
+    /** A String representing the path to the
+     * trees directory. */
+    static final String TREES = GITLET + "trees";
+
+    /** Commands that only read the repository, and so run without its
+     * lock. Init is among them, having no repository to lock yet. */
+    static final Set<String> READ_ONLY = Set.of("init", "log",
+            "global-log", "status", "find", "reflog", "fsck", "diff",
+            "daemon");
+
 }
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.util.PriorityQueue;
+
+/** Finds the best common ancestor of two commits in a CommitGraph.
+ * Both histories are walked at once, through first and second parents
+ * alike, from a priority queue that always takes the commit with the
+ * highest generation number next. Each commit is painted with the side
+ * (or sides) it was reached from; since every child of a commit has a
+ * higher generation, its paint is final by the time it is taken, so
+ * the first commit found painted by both sides is a common ancestor
+ * that no other common ancestor descends from, and the walk stops
+ * there.
+ * @author Hannah Verdonk */
+class MergeBase {
+
+    /** Returns the position in GRAPH of the best common ancestor of the
+     *  commits at positions ONE and TWO, or CommitGraph.NONE if they
+     *  share no history. */
+    static int find(CommitGraph graph, int one, int two) {
+        if (one == two) {
+            return one;
+        }
+        byte[] paint = new byte[graph.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            int c = Integer.compare(graph.generation(b),
+                                    graph.generation(a));
+            return c != 0 ? c : Long.compare(graph.time(b), graph.time(a));
+        });
+        paint[one] = ONE;
+        paint[two] = TWO;
+        queue.add(one);
+        queue.add(two);
+
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            if (paint[c] == BOTH) {
+                return c;
+            }
+            for (int p : new int[] {graph.parent(c), graph.secondParent(c)}) {
+                if (p == CommitGraph.NONE
+                        || (paint[p] | paint[c]) == paint[p]) {
+                    continue;
+                }
+                if (paint[p] == 0) {
+                    queue.add(p);
+                }
+                paint[p] |= paint[c];
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** Paint of a commit reached from the first commit. */
+    private static final byte ONE = 1;
+
+    /** Paint of a commit reached from the second commit. */
+    private static final byte TWO = 2;
+
+    /** Paint of a commit reached from both. */
+    private static final byte BOTH = ONE | TWO;
+
+}
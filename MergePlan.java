@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** What a merge does to each file, decided from the snapshots of the
+ * split point and of the two commits being merged before any file is
+ * read or written.
+ *
+ * A file is kept as the current commit has it if the other side left
+ * it alone or changed it the same way; taken from the other commit if
+ * only the other side changed it; deleted if the other side deleted it
+ * and the current side left it alone; and merged line by line, by
+ * FileMerge, if both sides changed it differently. A file one side
+ * deleted and the other changed keeps the changed version. Planning
+ * only compares blob ids; carrying out the plan then reads, merges and
+ * stores the blobs and writes the working files in parallel, each blob
+ * of each commit being read at most once. The blobs stored are flushed
+ * to disk together when the merge commit's branch is updated.
+ * @author Hannah Verdonk */
+class MergePlan {
+
+    /** Plans the merge of OTHER into CURRENT, which both descend from
+     *  SPLIT, each a map of file names to blob ids. SPLIT may be
+     *  null, standing for no files. */
+    MergePlan(Map<String, String> split, Map<String, String> current,
+              Map<String, String> other) {
+        this.split = split == null ? new HashMap<>() : split;
+        this.current = current;
+        this.other = other;
+        Set<String> names = new TreeSet<>(this.split.keySet());
+        names.addAll(current.keySet());
+        names.addAll(other.keySet());
+        for (String name : names) {
+            plan(name, this.split.get(name), current.get(name),
+                 other.get(name));
+        }
+    }
+
+    /** Decides what to do with file NAME, whose blob is S at the split
+     *  point, C in the current commit and O in the other, each null if
+     *  the file is absent there. */
+    private void plan(String name, String s, String c, String o) {
+        if (c == null && o == null) {
+            return;
+        } else if (o == null) {
+            if (c.equals(s)) {
+                deleted.add(name);
+            } else {
+                contents.put(name, c);
+            }
+        } else if (c == null) {
+            if (!o.equals(s)) {
+                taken.add(name);
+            }
+        } else if (c.equals(o) || o.equals(s)) {
+            contents.put(name, c);
+        } else if (c.equals(s)) {
+            taken.add(name);
+        } else {
+            merged.add(name);
+        }
+    }
+
+    /** Carries out the plan in the working directory and the object
+     *  store. */
+    void execute() {
+        List<String> work = new ArrayList<>(merged);
+        work.addAll(taken);
+        Set<String> merging = new TreeSet<>(merged);
+        List<String> shas = Workers.map(work, name -> {
+            if (!merging.contains(name)) {
+                Checkout.write(name, other.get(name));
+                return other.get(name);
+            }
+            return merge(name);
+        });
+        for (int i = 0; i < work.size(); i += 1) {
+            contents.put(work.get(i), shas.get(i));
+        }
+        for (String name : deleted) {
+            deleteWorkingFile(name);
+        }
+    }
+
+    /** Merges the two versions of file NAME, storing the result as a
+     *  blob and writing it to the working file. Returns the blob's
+     *  id. */
+    private String merge(String name) {
+        FileMerge m = new FileMerge(read(split.get(name)),
+                                    read(current.get(name)),
+                                    read(other.get(name)));
+        byte[] result = m.contents();
+        String sha = BlobStore.put(result);
+        File dest = new File(System.getProperty("user.dir") + Main.S + name);
+        dest.getParentFile().mkdirs();
+        writeContents(dest, result);
+        StatCache.record(dest, name, sha);
+        if (m.conflicted()) {
+            conflicted.add(name);
+        }
+        return sha;
+    }
+
+    /** Returns the contents of the blob SHA, or no bytes if SHA is
+     *  null. */
+    private static byte[] read(String sha) {
+        return sha == null ? new byte[0] : BlobStore.read(sha);
+    }
+
+    /** Returns the files of the merge commit, once the plan has been
+     *  carried out, by name. */
+    HashMap<String, String> contents() {
+        return contents;
+    }
+
+    /** Returns the names of the files that were left with conflicts, in
+     *  order. */
+    Set<String> conflicted() {
+        return new TreeSet<>(conflicted);
+    }
+
+    /** The split point's files. */
+    private final Map<String, String> split;
+    /** The current commit's files. */
+    private final Map<String, String> current;
+    /** The other commit's files. */
+    private final Map<String, String> other;
+
+    /** The merge commit's files. */
+    private final HashMap<String, String> contents = new HashMap<>();
+    /** Files to take from the other commit. */
+    private final List<String> taken = new ArrayList<>();
+    /** Files to merge line by line. */
+    private final List<String> merged = new ArrayList<>();
+    /** Files to delete. */
+    private final List<String> deleted = new ArrayList<>();
+    /** Merged files left with conflicts. */
+    private final Set<String> conflicted = ConcurrentHashMap.newKeySet();
+
+}
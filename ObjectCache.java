@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of objects already read and decoded during this command,
+ * shared by every reader of commits, trees and blobs, so an object
+ * used many times (the head commit, say, or a blob both checked out
+ * and merged) is read from disk once. It is bounded by an estimate of
+ * the bytes its entries occupy rather than by their number, and evicts
+ * the least recently used entries first. The budget is 64 MiB, or
+ * GITLET_CACHE_BYTES if that environment variable is set; 0 turns the
+ * cache off. Cached objects are shared, and in the daemon outlive the
+ * command that read them, so they must never be modified: a reader
+ * that wants to change one works on a copy. Setting
+ * GITLET_CACHE_STATS prints how often it helped.
+ * @author Hannah Verdonk */
+class ObjectCache {
+
+    /** Returns the object cached under KEY, or null, counting a hit or
+     *  a miss. */
+    static synchronized Object get(String key) {
+        Entry e = ENTRIES.get(key);
+        if (e == null) {
+            misses += 1;
+            Trace.count(Trace.CACHE_MISSES, 1);
+            return null;
+        }
+        hits += 1;
+        Trace.count(Trace.CACHE_HITS, 1);
+        return e.value;
+    }
+
+    /** Caches VALUE under KEY, as occupying about WEIGHT bytes, then
+     *  evicts least recently used entries until the cache is within its
+     *  budget. Objects too big to be worth keeping are not cached. */
+    static synchronized void put(String key, Object value, long weight) {
+        if (weight > BUDGET / LARGEST) {
+            return;
+        }
+        Entry old = ENTRIES.put(key, new Entry(value, weight));
+        bytes += weight - (old == null ? 0 : old.weight);
+        Iterator<Entry> lru = ENTRIES.values().iterator();
+        while (bytes > BUDGET && lru.hasNext()) {
+            bytes -= lru.next().weight;
+            lru.remove();
+        }
+    }
+
+    /** Empties the cache. */
+    static synchronized void clear() {
+        ENTRIES.clear();
+        bytes = 0;
+    }
+
+    /** Returns the number of lookups that found their object. */
+    static synchronized long hits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    static synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns the estimated number of bytes held. */
+    static synchronized long bytes() {
+        return bytes;
+    }
+
+    /** Prints the hit and miss counts to standard error, if the
+     *  GITLET_CACHE_STATS environment variable is set. */
+    static synchronized void report() {
+        if (System.getenv("GITLET_CACHE_STATS") != null) {
+            System.err.printf("cache: %d hits, %d misses, %d of %d bytes%n",
+                              hits, misses, bytes, BUDGET);
+        }
+    }
+
+    /** Returns the cache budget in bytes. */
+    private static long budget() {
+        String n = System.getenv("GITLET_CACHE_BYTES");
+        if (n != null && n.matches("[0-9]+")) {
+            return Long.parseLong(n);
+        }
+        return DEFAULT_BUDGET;
+    }
+
+    /** A cached object and its estimated size. */
+    private static class Entry {
+        /** An entry for VALUE, of about WEIGHT bytes. */
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+        /** The cached object. */
+        private final Object value;
+        /** Its estimated size in bytes. */
+        private final long weight;
+    }
+
+    /** Estimated bytes held by ENTRIES. */
+    private static long bytes;
+
+    /** Lookups that found their object. */
+    private static long hits;
+
+    /** Lookups that did not. */
+    private static long misses;
+
+    /** Budget used unless GITLET_CACHE_BYTES says otherwise. */
+    private static final long DEFAULT_BUDGET = 64L << 20;
+
+    /** The cache budget in bytes. */
+    static final long BUDGET = budget();
+
+    /** No object may take more than this fraction of the budget. */
+    private static final int LARGEST = 4;
+
+    /** Estimated bytes of one file-to-blob map entry or tree entry:
+     *  the entry itself and two short strings. */
+    static final int ENTRY_BYTES = 200;
+
+    /** Estimated bytes of an object apart from its entries. */
+    static final int OBJECT_BYTES = 256;
+
+    /** Initial capacity of ENTRIES. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Load factor of ENTRIES. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Cached entries by key, least recently used first. */
+    private static final Map<String, Entry> ENTRIES =
+        new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+}
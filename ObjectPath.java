@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/** Where loose objects live. Each kind of object (commits, trees,
+ * blobs) has its own directory, fanned out like git's by the first two
+ * hex digits of the object's id, so an object named "ab12..." is stored
+ * as "ab/12..." and no one directory holds more than a 256th of the
+ * objects. Objects stored flat by earlier versions of Gitlet are still
+ * found where they are until the migrate command moves them.
+ * @author Hannah Verdonk */
+class ObjectPath {
+
+    /** Returns the file holding the object named SHA in directory DIR:
+     *  where it is stored, if it is, or else where it would go. */
+    static File of(String dir, String sha) {
+        File sharded = sharded(dir, sha);
+        if (!sharded.exists()) {
+            File flat = new File(dir + Main.S + sha);
+            if (flat.exists()) {
+                return flat;
+            }
+        }
+        return sharded;
+    }
+
+    /** Returns the file to write the object named SHA to in directory
+     *  DIR, creating its fan-out directory if need be. */
+    static File create(String dir, String sha) {
+        File f = sharded(dir, sha);
+        f.getParentFile().mkdirs();
+        return f;
+    }
+
+    /** Returns true if the object named SHA is stored loose in DIR. */
+    static boolean exists(String dir, String sha) {
+        return of(dir, sha).exists();
+    }
+
+    /** Returns the names of every object stored loose in DIR, in sorted
+     *  order, or an empty list if DIR does not exist. */
+    @SuppressWarnings("try")
+    static List<String> list(String dir) {
+        TreeSet<String> ids = new TreeSet<>();
+        try (Trace.Span s = Trace.begin("list directory")) {
+            File[] entries = new File(dir).listFiles();
+            if (entries == null) {
+                return new ArrayList<>();
+            }
+            for (File e : entries) {
+                String name = e.getName();
+                if (e.isFile() && name.matches(FULL)) {
+                    ids.add(name);
+                } else if (e.isDirectory() && name.matches(FANOUT)) {
+                    String[] rest = e.list();
+                    for (String r : rest == null ? new String[0] : rest) {
+                        if (r.matches(REST)) {
+                            ids.add(name + r);
+                        }
+                    }
+                }
+            }
+        }
+        Trace.count(Trace.FILES_LISTED, ids.size());
+        return new ArrayList<>(ids);
+    }
+
+    /** Moves every object stored flat in DIR into its fan-out
+     *  directory. Returns the number of objects moved. */
+    static int migrate(String dir) {
+        int moved = 0;
+        File[] entries = new File(dir).listFiles();
+        if (entries == null) {
+            return moved;
+        }
+        for (File e : entries) {
+            if (!e.isFile() || !e.getName().matches(FULL)) {
+                continue;
+            }
+            File dest = create(dir, e.getName());
+            try {
+                if (dest.exists()) {
+                    Files.delete(e.toPath());
+                } else {
+                    Files.move(e.toPath(), dest.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            moved += 1;
+        }
+        return moved;
+    }
+
+    /** Returns the fanned-out file for the object named SHA in DIR. */
+    private static File sharded(String dir, String sha) {
+        if (sha.length() <= SPLIT) {
+            return new File(dir + Main.S + sha);
+        }
+        return new File(dir + Main.S + sha.substring(0, SPLIT)
+                        + Main.S + sha.substring(SPLIT));
+    }
+
+    /** Number of leading hex digits naming an object's subdirectory. */
+    private static final int SPLIT = 2;
+
+    /** Matches the name of an object stored flat. */
+    private static final String FULL = "[0-9a-f]{40}";
+
+    /** Matches the name of a fan-out directory. */
+    private static final String FANOUT = "[0-9a-f]{2}";
+
+    /** Matches the name of an object within its fan-out directory. */
+    private static final String REST = "[0-9a-f]{38}";
+
+}
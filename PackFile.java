@@ -0,0 +1,594 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** A packfile: many objects bundled into one file in the packs
+ * directory, next to an index of where each one starts. Entries are
+ * deflated, and blobs may be stored as a Delta against another version
+ * of the same file, so small edits to large files stay small on disk.
+ * Delta chains are at most MAX_DEPTH long.
+ *
+ * The index holds a fan-out table of 256 cumulative counts by first
+ * byte of object id, the sorted 20-byte ids, and each entry's offset
+ * in the pack, so a lookup is a binary search within one bucket.
+ * @author Hannah Verdonk */
+class PackFile {
+
+    /** Loads the pack whose data is in PACK and index is in IDX. */
+    private PackFile(File pack, File idx) {
+        this.pack = pack;
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(idx)))) {
+            if (in.readInt() != IDX_MAGIC) {
+                throw new IllegalArgumentException("not a pack index");
+            }
+            fanout = new int[FANOUT];
+            for (int i = 0; i < FANOUT; i += 1) {
+                fanout[i] = in.readInt();
+            }
+            int n = fanout[FANOUT - 1];
+            ids = new byte[n * ID_BYTES];
+            in.readFully(ids);
+            offsets = new long[n];
+            for (int i = 0; i < n; i += 1) {
+                offsets[i] = in.readLong();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* LOOKUPS ACROSS ALL PACKS */
+
+    /** Returns true if some pack holds the object named SHA. */
+    static boolean contains(String sha) {
+        return locate(sha) != null;
+    }
+
+    /** Returns the contents of the object named SHA, or null if no pack
+     *  holds it. */
+    static byte[] read(String sha) {
+        PackFile p = locate(sha);
+        if (p == null) {
+            return null;
+        }
+        return p.readEntry(p.offsets[p.find(sha)]);
+    }
+
+    /** Returns a stream over the contents of the object named SHA, or
+     *  null if no pack holds it. Objects stored whole are inflated as
+     *  they are read. */
+    static InputStream open(String sha) {
+        PackFile p = locate(sha);
+        if (p == null) {
+            return null;
+        }
+        return p.openEntry(p.offsets[p.find(sha)]);
+    }
+
+    /** Returns the ids of every packed object of TYPE. */
+    static List<String> ids(byte type) {
+        List<String> result = new ArrayList<>();
+        ByteBuffer b = ByteBuffer.allocate(1);
+        for (PackFile p : packs()) {
+            try (FileChannel ch = FileChannel.open(p.pack.toPath())) {
+                for (int i = 0; i < p.offsets.length; i += 1) {
+                    b.clear();
+                    ch.read(b, p.offsets[i]);
+                    if (b.get(0) == type) {
+                        result.add(p.idAt(i));
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the type of the packed object named SHA, COMMIT, TREE or
+     *  BLOB, or -1 if no pack holds it. */
+    static byte type(String sha) {
+        PackFile p = locate(sha);
+        if (p == null) {
+            return -1;
+        }
+        byte type = p.typeAt(p.offsets[p.find(sha)]);
+        return type == DELTA ? BLOB : type;
+    }
+
+    /** Returns the last-modified time of the pack holding the object
+     *  named SHA, in milliseconds, or 0 if no pack holds it. */
+    static long packedAt(String sha) {
+        PackFile p = locate(sha);
+        return p == null ? 0 : p.pack.lastModified();
+    }
+
+    /** Returns the number of bytes the packed object named SHA takes up
+     *  in its pack, or 0 if no pack holds it. */
+    static long packedSize(String sha) {
+        PackFile p = locate(sha);
+        if (p == null) {
+            return 0;
+        }
+        int i = p.find(sha);
+        long end = i + 1 < p.offsets.length ? p.offsets[i + 1]
+            : p.pack.length();
+        return end - p.offsets[i];
+    }
+
+    /** Returns the pack holding the object named SHA, or null. */
+    private static PackFile locate(String sha) {
+        for (PackFile p : packs()) {
+            if (p.find(sha) >= 0) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /** Returns every pack in the repository, loading their indexes the
+     *  first time they are needed. */
+    static synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = plainFilenamesIn(PACKS);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String base = name.substring(0, name.length()
+                                                     - ".idx".length());
+                        packs.add(new PackFile(
+                                new File(PACKS + Main.S + base + ".pack"),
+                                new File(PACKS + Main.S + name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Forgets the packs loaded so far, so that packs written or
+     *  removed since by another process are seen. */
+    static void forget() {
+        packs = null;
+    }
+
+    /* READING ONE PACK */
+
+    /** Returns the position of the object named SHA in my index, or -1
+     *  if I do not hold it. */
+    private int find(String sha) {
+        if (sha.length() != 2 * ID_BYTES) {
+            return -1;
+        }
+        byte[] id = unhex(sha);
+        int bucket = id[0] & BYTE;
+        int lo = bucket == 0 ? 0 : fanout[bucket - 1];
+        int hi = fanout[bucket] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Arrays.compareUnsigned(ids, mid * ID_BYTES,
+                    (mid + 1) * ID_BYTES, id, 0, ID_BYTES);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the id of the Ith object in my index. */
+    private String idAt(int i) {
+        return hex(Arrays.copyOfRange(ids, i * ID_BYTES,
+                                      (i + 1) * ID_BYTES));
+    }
+
+    /** Returns the type of the entry at OFFSET. */
+    private byte typeAt(long offset) {
+        try (FileChannel ch = FileChannel.open(pack.toPath())) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, offset);
+            return b.get(0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the entry at OFFSET, applying deltas. */
+    private byte[] readEntry(long offset) {
+        try (InputStream in = openEntry(offset)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of the entry at OFFSET. */
+    private InputStream openEntry(long offset) {
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(pack.toPath());
+            ch.position(offset);
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(ch));
+            byte type = in.readByte();
+            String base = null;
+            if (type == DELTA) {
+                byte[] id = new byte[ID_BYTES];
+                in.readFully(id);
+                base = hex(id);
+            }
+            InputStream body = new InflaterInputStream(in);
+            if (base == null) {
+                return body;
+            }
+            byte[] delta;
+            try (InputStream b = body) {
+                delta = b.readAllBytes();
+            }
+            return new ByteArrayInputStream(
+                    Delta.apply(readEntry(offsets[find(base)]), delta));
+        } catch (IOException excp) {
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException closing) {
+                    excp.addSuppressed(closing);
+                }
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* WRITING PACKS */
+
+    /** Bundles every loose and already-packed commit, tree and blob
+     *  into a single new pack, deltifying blob versions of the same file
+     *  name against their next-newer version, then removes what it replaced.
+     *  Returns {objects packed, objects stored as deltas}. */
+    static int[] packAll() {
+        return repack(null);
+    }
+
+    /** Bundles the loose and packed objects whose ids are in KEEP, or
+     *  every object if KEEP is null, into a single new pack as packAll
+     *  does, then removes the old packs and the loose copies of what
+     *  was packed. Packed objects left out of KEEP are lost; loose ones
+     *  are left alone. Returns {objects packed, objects stored as
+     *  deltas}. */
+    static int[] repack(Set<String> keep) {
+        TreeMap<String, Byte> types = new TreeMap<>();
+        List<String> looseCommits = ObjectPath.list(Main.COMMITS);
+        List<String> looseBlobs = ObjectPath.list(Main.BLOBS);
+        for (String id : ids(BLOB)) {
+            types.put(id, BLOB);
+        }
+        for (String id : ids(DELTA)) {
+            types.put(id, BLOB);
+        }
+        for (String id : looseBlobs) {
+            types.put(id, BLOB);
+        }
+        List<String> looseTrees = ObjectPath.list(Main.TREES);
+        for (String id : ids(TREE)) {
+            types.put(id, TREE);
+        }
+        for (String id : looseTrees) {
+            types.put(id, TREE);
+        }
+        for (String id : Commit.allIds()) {
+            types.put(id, COMMIT);
+        }
+        if (keep != null) {
+            types.keySet().retainAll(keep);
+        }
+        if (types.isEmpty()) {
+            removePacks(packs(), null);
+            packs = null;
+            return new int[] {0, 0};
+        }
+
+        HashMap<String, String> bases = chooseBases(types);
+        String name = "pack-" + sha1(new ArrayList<>(types.keySet()));
+        File tmp = new File(PACKS + Main.S + name + ".tmp");
+        new File(PACKS).mkdir();
+        long[] entryOffsets = new long[types.size()];
+        try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(ch);
+            DataOutputStream head = new DataOutputStream(raw);
+            head.writeInt(PACK_MAGIC);
+            head.writeInt(types.size());
+            int i = 0;
+            for (Map.Entry<String, Byte> e : types.entrySet()) {
+                entryOffsets[i] = ch.position();
+                writeEntry(head, e.getKey(), e.getValue(),
+                           bases.get(e.getKey()));
+                i += 1;
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        File pack = new File(PACKS + Main.S + name + ".pack");
+        File idx = new File(PACKS + Main.S + name + ".idx");
+        List<PackFile> old = new ArrayList<>(packs());
+        try {
+            Files.move(tmp.toPath(), pack.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeIndex(idx, new ArrayList<>(types.keySet()), entryOffsets);
+        LockFile.written(pack);
+        LockFile.written(idx);
+        LockFile.syncWritten();
+        packs = null;
+        removePacks(old, pack);
+        for (String id : looseCommits) {
+            if (types.containsKey(id)) {
+                ObjectPath.of(Main.COMMITS, id).delete();
+            }
+        }
+        for (String id : looseBlobs) {
+            if (types.containsKey(id)) {
+                BlobStore.blobFile(id).delete();
+            }
+        }
+        for (String id : looseTrees) {
+            if (types.containsKey(id)) {
+                ObjectPath.of(Main.TREES, id).delete();
+            }
+        }
+        return new int[] {types.size(), bases.size()};
+    }
+
+    /** Deletes each of the packs OLD, with its index, except the one
+     *  whose data is in KEPT (which may be null). */
+    private static void removePacks(List<PackFile> old, File kept) {
+        for (PackFile p : old) {
+            if (!p.pack.equals(kept)) {
+                String base = p.pack.getPath();
+                new File(base.substring(0, base.length() - ".pack".length())
+                         + ".idx").delete();
+                p.pack.delete();
+            }
+        }
+    }
+
+    /** Returns, for each blob in TYPES worth storing as a delta, the id
+     *  of the blob it should be stored against. Versions of one file
+     *  name, found by diffing each commit against its first parent,
+     *  are chained newest to oldest, so recent versions are whole and
+     *  cheap to check out. A blob that is already some other
+     *  blob's base is never given a base of its own, so a chain only
+     *  ever grows at its far end, the depths recorded stay right, and
+     *  no chain can loop back on itself. */
+    private static HashMap<String, String> chooseBases(
+            TreeMap<String, Byte> types) {
+        TreeMap<String, TreeMap<String, String>> versions = new TreeMap<>();
+        for (Map.Entry<String, Byte> e : types.entrySet()) {
+            if (e.getValue() != COMMIT) {
+                continue;
+            }
+            Commit c = Commit.read(e.getKey());
+            String when = c.time().toString() + c.shaCode();
+            HashMap<String, String[]> changes = new HashMap<>();
+            c.changes(changes);
+            for (Map.Entry<String, String[]> f : changes.entrySet()) {
+                String blob = f.getValue()[1];
+                if (blob != null) {
+                    versions.computeIfAbsent(f.getKey(),
+                                             k -> new TreeMap<>())
+                        .put(when, blob);
+                }
+            }
+        }
+
+        HashMap<String, String> bases = new HashMap<>();
+        HashMap<String, Integer> depth = new HashMap<>();
+        HashSet<String> used = new HashSet<>();
+        for (TreeMap<String, String> history : versions.values()) {
+            List<String> shas = new ArrayList<>(
+                    new LinkedHashSet<>(history.values()));
+            Collections.reverse(shas);
+            byte[] newer = null;
+            String newerSha = null;
+            for (String sha : shas) {
+                if (!types.containsKey(sha)) {
+                    continue;
+                }
+                byte[] contents = contentsOf(sha);
+                if (newer != null && contents != null
+                        && !bases.containsKey(sha) && !used.contains(sha)
+                        && depth.getOrDefault(newerSha, 0) < MAX_DEPTH) {
+                    byte[] delta = Delta.create(newer, contents);
+                    if (delta != null) {
+                        bases.put(sha, newerSha);
+                        used.add(newerSha);
+                        depth.put(sha, depth.getOrDefault(newerSha, 0) + 1);
+                    }
+                }
+                newer = contents;
+                newerSha = sha;
+            }
+        }
+        return bases;
+    }
+
+    /** Returns the contents of the blob named SHA if it is small enough
+     *  to be considered for delta compression, or else null. */
+    private static byte[] contentsOf(String sha) {
+        byte[] contents = BlobStore.read(sha);
+        return contents.length <= DELTA_LIMIT ? contents : null;
+    }
+
+    /** Writes the object ID of TYPE to OUT as one pack entry, as a delta
+     *  against BASE if BASE is not null. */
+    private static void writeEntry(DataOutputStream out, String id,
+                                   byte type, String base)
+            throws IOException {
+        byte[] body;
+        InputStream in = null;
+        if (type == COMMIT || type == TREE) {
+            String dir = type == COMMIT ? Main.COMMITS : Main.TREES;
+            try (InputStream c = openObject(ObjectPath.of(dir, id))) {
+                body = c.readAllBytes();
+            } catch (IOException excp) {
+                body = read(id);
+            }
+        } else if (base != null) {
+            body = Delta.create(BlobStore.read(base), BlobStore.read(id));
+        } else {
+            body = null;
+            in = BlobStore.open(id);
+        }
+
+        out.writeByte(base != null ? DELTA : type);
+        if (base != null) {
+            out.write(unhex(base));
+        }
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+        DeflaterOutputStream z = new DeflaterOutputStream(out, deflater,
+                BlobStore.BUFFER_SIZE);
+        try {
+            if (body != null) {
+                z.write(body);
+            } else {
+                in.transferTo(z);
+                in.close();
+            }
+            z.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Writes the index of a pack holding sorted IDS at OFFSETS to
+     *  file IDX. */
+    private static void writeIndex(File idx, List<String> ids,
+                                   long[] offsets) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(IDX_MAGIC);
+            int[] counts = new int[FANOUT];
+            for (String id : ids) {
+                counts[Integer.parseInt(id.substring(0, 2), HEX)] += 1;
+            }
+            int total = 0;
+            for (int i = 0; i < FANOUT; i += 1) {
+                total += counts[i];
+                out.writeInt(total);
+            }
+            for (String id : ids) {
+                out.write(unhex(id));
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeAtomically(idx, bytes.toByteArray());
+    }
+
+    /** Returns the bytes named by the hexadecimal numeral SHA. */
+    static byte[] unhex(String sha) {
+        byte[] result = new byte[sha.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    sha.substring(2 * i, 2 * i + 2), HEX);
+        }
+        return result;
+    }
+
+    /** The pack data file. */
+    private final File pack;
+
+    /** Cumulative count of ids whose first byte is at most each index. */
+    private int[] fanout;
+
+    /** Sorted object ids, ID_BYTES apiece. */
+    private byte[] ids;
+
+    /** Pack offset of the entry for each id. */
+    private long[] offsets;
+
+    /** Every pack in the repository, or null until first needed. */
+    private static List<PackFile> packs;
+
+    /** A String representing the path to the packs directory. */
+    static final String PACKS = Main.GITLET + "packs";
+
+    /** Entry type of a serialized commit. */
+    static final byte COMMIT = 1;
+
+    /** Entry type of a whole blob. */
+    static final byte BLOB = 2;
+
+    /** Entry type of a blob stored as a delta against another. */
+    static final byte DELTA = 3;
+
+    /** Entry type of a Tree. */
+    static final byte TREE = 4;
+
+    /** The longest chain of deltas a blob may be stored behind. */
+    static final int MAX_DEPTH = 10;
+
+    /** Blobs larger than this are always stored whole. */
+    private static final int DELTA_LIMIT = 1 << 24;
+
+    /** Marks a pack data file. */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** Marks a pack index file. */
+    private static final int IDX_MAGIC = 0x47494458;
+
+    /** Size of an object id in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Number of fan-out buckets, one per value of an id's first byte. */
+    private static final int FANOUT = 256;
+
+    /** Mask for an unsigned byte. */
+    private static final int BYTE = 0xff;
+
+    /** Radix of object ids. */
+    private static final int HEX = 16;
+
+}
@@ -0,0 +1,259 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The branches, and a log of how each of them has moved.
+ *
+ * A branch is stored either loose, as a file in .gitlet/branches
+ * holding its commit id, or in .gitlet/packed-refs, which holds many
+ * branches as lines of an id, a space and a name, sorted by name. A
+ * loose branch overrides a packed one of the same name, so moving a
+ * branch only ever writes its own small file; pack moves every loose
+ * branch into packed-refs, after which listing the branches is a
+ * single read. The file "current" in .gitlet/branches names the
+ * current branch.
+ *
+ * Every move of a branch is appended to its reflog in .gitlet/logs/refs
+ * as a line of the old id, the new id, the time in milliseconds, a tab
+ * and a description; moves of the current branch, and switches between
+ * branches, are appended to .gitlet/logs/HEAD as well. A reflog is
+ * only ever appended to, so a branch reset by mistake can be put back
+ * from it without searching every commit.
+ * @author Hannah Verdonk */
+class Refs {
+
+    /** Returns the name of the current branch. */
+    static String current() {
+        return readContentsAsString(new File(HEAD));
+    }
+
+    /** Makes NAME the current branch, logging the switch. */
+    static void setCurrent(String name) {
+        String from = current();
+        String sha = get(name);
+        LockFile.replace(new File(HEAD), name);
+        log(HEAD_LOG, sha, sha, "checkout: moving from " + from
+            + " to " + name);
+    }
+
+    /** Returns the commit id at the head of branch NAME, or null if
+     *  there is no such branch. */
+    static String get(String name) {
+        File loose = loose(name);
+        if (loose.isFile()) {
+            return readContentsAsString(loose);
+        }
+        return readPacked().get(name);
+    }
+
+    /** Returns true if there is a branch named NAME. */
+    static boolean exists(String name) {
+        return get(name) != null;
+    }
+
+    /** Returns every branch, by name in order, mapped to its head. */
+    static Map<String, String> all() {
+        TreeMap<String, String> result = readPacked();
+        for (String name : plainFilenamesIn(new File(Main.BRANCHES))) {
+            if (isBranchFile(name)) {
+                result.put(name, readContentsAsString(loose(name)));
+            }
+        }
+        return result;
+    }
+
+    /** Points branch NAME, new or old, at commit SHA, logging the move
+     *  with REASON. */
+    static void update(String name, String sha, String reason) {
+        String old = get(name);
+        LockFile.replace(loose(name), sha);
+        String line = entry(old, sha, reason);
+        append(refLog(name), line);
+        if (new File(HEAD).exists() && name.equals(current())) {
+            append(new File(HEAD_LOG), line);
+        }
+    }
+
+    /** Removes branch NAME, and its reflog. */
+    static void delete(String name) {
+        loose(name).delete();
+        TreeMap<String, String> packed = readPacked();
+        if (packed.remove(name) != null) {
+            writePacked(packed);
+        }
+        refLog(name).delete();
+    }
+
+    /** Moves every loose branch into packed-refs. Returns the number of
+     *  branches packed. */
+    static int pack() {
+        Map<String, String> refs = all();
+        writePacked(refs);
+        for (String name : refs.keySet()) {
+            loose(name).delete();
+        }
+        return refs.size();
+    }
+
+    /* REFLOGS */
+
+    /** Returns the reflog of branch NAME, or of the current branch's
+     *  switches and moves if NAME is null, newest entry first. */
+    static List<LogEntry> reflog(String name) {
+        File f = name == null ? new File(HEAD_LOG) : refLog(name);
+        List<LogEntry> result = new ArrayList<>();
+        if (!f.isFile()) {
+            return result;
+        }
+        for (String line : readContentsAsString(f).split("\n")) {
+            LogEntry e = LogEntry.parse(line);
+            if (e != null) {
+                result.add(e);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** One line of a reflog. */
+    static class LogEntry {
+        /** An entry recording a move from OLD to SHA at TIME, in
+         *  milliseconds, described by MESSAGE. */
+        LogEntry(String old, String sha, long time, String message) {
+            this.old = old;
+            this.sha = sha;
+            this.time = time;
+            this.message = message;
+        }
+
+        /** Returns the entry LINE holds, or null if LINE is not a whole
+         *  entry, as when a crash cut an append short. */
+        static LogEntry parse(String line) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                return null;
+            }
+            String[] head = line.substring(0, tab).split(" ");
+            if (head.length != 3 || head[0].length() != UID_LENGTH
+                    || head[1].length() != UID_LENGTH
+                    || !head[2].matches("[0-9]+")) {
+                return null;
+            }
+            String old = head[0].equals(NULL_ID) ? null : head[0];
+            return new LogEntry(old, head[1], Long.parseLong(head[2]),
+                                line.substring(tab + 1));
+        }
+
+        /** The id the branch held before, or null if it was new. */
+        final String old;
+        /** The id the branch was moved to. */
+        final String sha;
+        /** When, in milliseconds since the epoch. */
+        final long time;
+        /** What moved it. */
+        final String message;
+    }
+
+    /** Appends a line moving from OLD to SHA, described by REASON, to
+     *  the reflog at PATH. */
+    private static void log(String path, String old, String sha,
+                            String reason) {
+        append(new File(path), entry(old, sha, reason));
+    }
+
+    /** Returns a reflog line for a move from OLD to SHA for REASON. */
+    private static String entry(String old, String sha, String reason) {
+        return (old == null ? NULL_ID : old) + " " + sha + " "
+            + System.currentTimeMillis() + "\t"
+            + reason.replace('\n', ' ') + "\n";
+    }
+
+    /** Appends LINE to the log F, creating it if need be. */
+    private static void append(File f, String line) {
+        f.getParentFile().mkdirs();
+        try {
+            Files.write(f.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* STORAGE */
+
+    /** Returns the loose file of branch NAME. */
+    private static File loose(String name) {
+        return new File(Main.BRANCHES + Main.S + name);
+    }
+
+    /** Returns the reflog file of branch NAME. */
+    private static File refLog(String name) {
+        return new File(REF_LOGS + Main.S + name);
+    }
+
+    /** Returns true if the file NAME in the branches directory is a
+     *  loose branch. */
+    private static boolean isBranchFile(String name) {
+        return !name.equals("current") && !name.endsWith(LockFile.SUFFIX)
+            && !name.endsWith(".tmp");
+    }
+
+    /** Returns the packed branches, by name. */
+    private static TreeMap<String, String> readPacked() {
+        TreeMap<String, String> result = new TreeMap<>();
+        File f = new File(PACKED);
+        if (!f.isFile()) {
+            return result;
+        }
+        for (String line : readContentsAsString(f).split("\n")) {
+            if (line.length() > UID_LENGTH + 1) {
+                result.put(line.substring(UID_LENGTH + 1),
+                           line.substring(0, UID_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /** Replaces packed-refs with REFS. */
+    private static void writePacked(Map<String, String> refs) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            out.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
+        }
+        LockFile.replace(new File(PACKED), out.toString());
+    }
+
+    /** A String representing the path to the file naming the current
+     *  branch. */
+    static final String HEAD = Main.BRANCHES + Main.S + "current";
+
+    /** A String representing the path to the packed branches. */
+    static final String PACKED = Main.GITLET + "packed-refs";
+
+    /** A String representing the path to the reflogs. */
+    static final String LOGS = Main.GITLET + "logs";
+
+    /** A String representing the path to the branches' reflogs. */
+    static final String REF_LOGS = LOGS + Main.S + "refs";
+
+    /** A String representing the path to the current branch's
+     *  reflog. */
+    static final String HEAD_LOG = LOGS + Main.S + "HEAD";
+
+    /** Stands for no commit in a reflog. */
+    private static final String NULL_ID = "0".repeat(UID_LENGTH);
+
+}
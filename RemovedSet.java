@@ -6,6 +6,7 @@ import java.util.HashSet;
 /** I made this class just so I could read back HashSets
  * without getting a casting error. Keys are File names,
  * values are whether or not Gitlet is tracking those files.
+ * Only read now, from repositories made before the Index.
  * @author Hannah Verdonk */
 public class RemovedSet implements Serializable {
 
@@ -23,4 +24,7 @@ public class RemovedSet implements Serializable {
     /** A listing of which files are being tracked. */
     private HashSet<String> removed;
 
+    /** Pinned so removal sets written by earlier versions still read. */
+    private static final long serialVersionUID = -1114523402863938641L;
+
 }
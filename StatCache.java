@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** Remembers the size, modification time and inode of working files
+ * alongside the SHA1 hashcode of their contents, the way git's index
+ * does, so a file whose stat data has not changed need not be read and
+ * rehashed. An entry is only trusted if the file was last modified
+ * before the cache itself was written; a file changed in the same
+ * clock tick as it was recorded could otherwise look unchanged.
+ * @author Hannah Verdonk */
+class StatCache {
+
+    /** Returns the SHA1 hashcode of working file F, named NAME, taking
+     *  it from the cache if F's stat data is unchanged. Safe to call
+     *  from several threads at once. */
+    static String hash(File f, String name) {
+        long[] stat = stat(f);
+        Entry e = lookup(name);
+        if (e != null && e.matches(stat) && e.mtime < writtenAt) {
+            return e.sha;
+        }
+        String sha = BlobStore.hash(f);
+        record(name, stat, sha);
+        return sha;
+    }
+
+    /** Returns true if working file F, named NAME, certainly still holds
+     *  the contents hashing to SHA, judging by stat data alone. */
+    static boolean unchanged(File f, String name, String sha) {
+        Entry e = lookup(name);
+        return e != null && e.sha.equals(sha) && e.mtime < writtenAt
+            && f.exists() && e.matches(stat(f));
+    }
+
+    /** Records that working file F, named NAME, holds contents hashing
+     *  to SHA, as when it was just added or checked out. */
+    static void record(File f, String name, String sha) {
+        record(name, stat(f), sha);
+    }
+
+    /** Writes the cache back out if anything was recorded. */
+    static synchronized void save() {
+        if (entries == null || !dirty) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry v = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(v.size);
+                out.writeLong(v.mtime);
+                out.writeLong(v.inode);
+                out.writeUTF(v.sha);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeAtomically(new File(CACHE), bytes.toByteArray());
+        writtenAt = stat(new File(CACHE))[1];
+        dirty = false;
+    }
+
+    /** Forgets the cached entries if the cache file has been written
+     *  by someone else since they were read, so they are read again. */
+    static synchronized void forgetIfStale() {
+        if (entries != null && stat(new File(CACHE))[1] != writtenAt) {
+            entries = null;
+            writtenAt = Long.MIN_VALUE;
+            dirty = false;
+        }
+    }
+
+    /** Records STAT and SHA for the working file NAME. */
+    private static synchronized void record(String name, long[] stat,
+                                            String sha) {
+        entries().put(name, new Entry(stat, sha));
+        dirty = true;
+    }
+
+    /** Returns the entry for working file NAME, or null. */
+    private static synchronized Entry lookup(String name) {
+        return entries().get(name);
+    }
+
+    /** Returns the cached entries, reading them in the first time. */
+    private static TreeMap<String, Entry> entries() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        File f = new File(CACHE);
+        if (!f.exists()) {
+            return entries;
+        }
+        writtenAt = stat(f)[1];
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(f)))) {
+            if (in.readInt() != MAGIC) {
+                return entries;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                long[] stat = {in.readLong(), in.readLong(), in.readLong()};
+                entries.put(name, new Entry(stat, in.readUTF()));
+            }
+        } catch (IOException excp) {
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /** Returns {size, modification time in nanoseconds, inode} of file
+     *  F. The inode is 0 where the file system does not report one. */
+    static long[] stat(File f) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(f.toPath(),
+                    BasicFileAttributes.class);
+            long inode = 0;
+            try {
+                Object ino = Files.getAttribute(f.toPath(), "unix:ino");
+                inode = ((Number) ino).longValue();
+            } catch (UnsupportedOperationException
+                     | IllegalArgumentException excp) {
+                inode = 0;
+            }
+            return new long[] {
+                a.size(), a.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode
+            };
+        } catch (IOException excp) {
+            return new long[] {-1, -1, -1};
+        }
+    }
+
+    /** One working file's recorded stat data and contents hash. */
+    private static class Entry {
+        /** An entry for a file with STAT whose contents hash to SHA. */
+        Entry(long[] stat, String sha) {
+            size = stat[0];
+            mtime = stat[1];
+            inode = stat[2];
+            this.sha = sha;
+        }
+
+        /** Returns true if STAT is the stat data I recorded. */
+        boolean matches(long[] stat) {
+            return size == stat[0] && mtime == stat[1] && inode == stat[2];
+        }
+
+        /** File size in bytes. */
+        private final long size;
+        /** Modification time in nanoseconds. */
+        private final long mtime;
+        /** Inode number, or 0. */
+        private final long inode;
+        /** SHA1 hashcode of the contents. */
+        private final String sha;
+    }
+
+    /** Cached entries by file name, or null until first needed. */
+    private static TreeMap<String, Entry> entries;
+
+    /** Modification time of the cache file when it was read, or the
+     *  earliest time if there was none. */
+    private static long writtenAt = Long.MIN_VALUE;
+
+    /** True if entries have been recorded since the cache was read. */
+    private static boolean dirty;
+
+    /** A String representing the path to the stat cache file. */
+    static final String CACHE = Main.GITLET + "statcache";
+
+    /** Marks a stat cache file. */
+    private static final int MAGIC = 0x47535443;
+
+}
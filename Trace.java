@@ -0,0 +1,341 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Optional timing and counting of where a command spends its time.
+ *
+ * Tracing is off unless the GITLET_TRACE environment variable names a
+ * format, or the command is preceded by --trace or --trace=FORMAT. The
+ * formats are summary, a table of each phase's calls and time followed
+ * by the counters; json, the same as one JSON object; and chrome, every
+ * span as a Chrome trace event, for chrome://tracing or Perfetto. The
+ * output goes to standard error, or replaces the file named by
+ * GITLET_TRACE_FILE.
+ *
+ * A phase is timed by a span, begun and closed around it, on whatever
+ * thread does the work; phases nest, so their times overlap. Counters
+ * count objects read and written, bytes hashed, cache hits and misses,
+ * and files listed and written. While tracing is off, begin returns
+ * one shared span that records nothing, and count returns at once, so
+ * the instrumented code pays for a test of a static field and no
+ * more.
+ * @author Hannah Verdonk */
+class Trace {
+
+    /** Returns ARGS without a leading --trace option, turning tracing on
+     *  for this command if there is one or GITLET_TRACE is set. */
+    static String[] options(String... args) {
+        format = ENV_FORMAT;
+        if (args.length > 0 && (args[0].equals(FLAG)
+                                || args[0].startsWith(FLAG + "="))) {
+            String f = args[0].equals(FLAG) ? SUMMARY
+                : args[0].substring(FLAG.length() + 1);
+            if (!Arrays.asList(FORMATS).contains(f)) {
+                throw new GitletException("Unknown trace format.");
+            }
+            format = f;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        on = format != null;
+        if (on) {
+            EVENTS.clear();
+            for (int i = 0; i < COUNTER_NAMES.length; i += 1) {
+                COUNTS.set(i, 0);
+            }
+            origin = System.nanoTime();
+        }
+        return args;
+    }
+
+    /** Returns true if this command is being traced. */
+    static boolean on() {
+        return on;
+    }
+
+    /** Returns a span timing the phase NAME, to be closed when the
+     *  phase ends. */
+    static Span begin(String name) {
+        return on ? new Span(name) : OFF;
+    }
+
+    /** Adds N to COUNTER, one of the counter constants. */
+    static void count(int counter, long n) {
+        if (on) {
+            COUNTS.addAndGet(counter, n);
+        }
+    }
+
+    /** Writes the trace of COMMAND, if it was traced, and turns tracing
+     *  off. */
+    static void finish(String command) {
+        if (!on) {
+            return;
+        }
+        on = false;
+        long total = System.nanoTime() - origin;
+        StringBuilder out = new StringBuilder();
+        switch (format) {
+        case JSON:
+            json(out, command, total);
+            break;
+        case CHROME:
+            chrome(out, total);
+            break;
+        default:
+            summary(out, command, total);
+            break;
+        }
+        String path = System.getenv("GITLET_TRACE_FILE");
+        if (path == null) {
+            System.err.print(out);
+            System.err.flush();
+        } else {
+            Utils.writeContents(new File(path),
+                                out.toString().getBytes(
+                                    StandardCharsets.UTF_8));
+        }
+    }
+
+    /** A phase being timed. */
+    static class Span implements AutoCloseable {
+        /** A span of the phase NAME, starting now. */
+        Span(String name) {
+            this.name = name;
+            start = System.nanoTime();
+        }
+
+        /** Ends the phase, recording it if tracing is on. */
+        @Override
+        public void close() {
+            if (this != OFF && on) {
+                EVENTS.add(new Event(name, Thread.currentThread().getId(),
+                                     start - origin,
+                                     System.nanoTime() - start));
+            }
+        }
+
+        /** The phase's name. */
+        private final String name;
+        /** When it began, by System.nanoTime. */
+        private final long start;
+    }
+
+    /** One timed phase, as recorded. */
+    private static class Event {
+        /** The phase NAME, run on thread TID from START nanoseconds
+         *  after the command began, for DURATION nanoseconds. */
+        Event(String name, long tid, long start, long duration) {
+            this.name = name;
+            this.tid = tid;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        /** The phase's name. */
+        final String name;
+        /** The thread it ran on. */
+        final long tid;
+        /** Its start, in nanoseconds since the command began. */
+        final long start;
+        /** Its length in nanoseconds. */
+        final long duration;
+    }
+
+    /** Returns the recorded phases, by name, each as its number of
+     *  calls, total nanoseconds and longest call in nanoseconds. */
+    private static Map<String, long[]> phases() {
+        Map<String, long[]> result = new TreeMap<>();
+        for (Event e : EVENTS) {
+            long[] p = result.computeIfAbsent(e.name, k -> new long[3]);
+            p[0] += 1;
+            p[1] += e.duration;
+            p[2] = Math.max(p[2], e.duration);
+        }
+        return result;
+    }
+
+    /** Appends to OUT a table of the phases and counters of COMMAND,
+     *  which took TOTAL nanoseconds. */
+    private static void summary(StringBuilder out, String command,
+                                long total) {
+        out.append(String.format(Locale.ROOT, "trace: %s %.3f ms%n",
+                                 command, millis(total)));
+        out.append(String.format(Locale.ROOT, "  %-20s %8s %12s %10s%n",
+                                 "phase", "calls", "total ms", "max ms"));
+        for (Map.Entry<String, long[]> e : phases().entrySet()) {
+            long[] p = e.getValue();
+            out.append(String.format(Locale.ROOT,
+                                     "  %-20s %8d %12.3f %10.3f%n",
+                                     e.getKey(), p[0], millis(p[1]),
+                                     millis(p[2])));
+        }
+        List<String> counters = new ArrayList<>();
+        for (int i = 0; i < COUNTER_NAMES.length; i += 1) {
+            counters.add(COUNTER_NAMES[i].replace('_', ' ') + " "
+                         + COUNTS.get(i));
+        }
+        out.append("  ").append(String.join(", ", counters))
+            .append(System.lineSeparator());
+    }
+
+    /** Appends to OUT the phases and counters of COMMAND, which took
+     *  TOTAL nanoseconds, as a JSON object. */
+    private static void json(StringBuilder out, String command, long total) {
+        out.append("{\"command\":").append(quote(command))
+            .append(",\"ms\":").append(decimal(millis(total)))
+            .append(",\"phases\":{");
+        String sep = "";
+        for (Map.Entry<String, long[]> e : phases().entrySet()) {
+            long[] p = e.getValue();
+            out.append(sep).append(quote(e.getKey()))
+                .append(":{\"calls\":").append(p[0])
+                .append(",\"ms\":").append(decimal(millis(p[1])))
+                .append(",\"maxMs\":").append(decimal(millis(p[2])))
+                .append('}');
+            sep = ",";
+        }
+        out.append("},\"counters\":");
+        counters(out);
+        out.append("}\n");
+    }
+
+    /** Appends to OUT every phase as a complete event of the Chrome
+     *  trace format, and the counters as a counter event at the end,
+     *  TOTAL nanoseconds after the command began. */
+    private static void chrome(StringBuilder out, long total) {
+        out.append("{\"traceEvents\":[");
+        for (Event e : EVENTS) {
+            out.append("{\"name\":").append(quote(e.name))
+                .append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(e.tid)
+                .append(",\"ts\":").append(decimal(micros(e.start)))
+                .append(",\"dur\":").append(decimal(micros(e.duration)))
+                .append("},\n");
+        }
+        out.append("{\"name\":\"counters\",\"ph\":\"C\",\"pid\":1,")
+            .append("\"ts\":").append(decimal(micros(total)))
+            .append(",\"args\":");
+        counters(out);
+        out.append("}]}\n");
+    }
+
+    /** Appends the counters to OUT as a JSON object. */
+    private static void counters(StringBuilder out) {
+        out.append('{');
+        for (int i = 0; i < COUNTER_NAMES.length; i += 1) {
+            out.append(i == 0 ? "" : ",").append(quote(COUNTER_NAMES[i]))
+                .append(':').append(COUNTS.get(i));
+        }
+        out.append('}');
+    }
+
+    /** Returns NANOS in milliseconds. */
+    private static double millis(long nanos) {
+        return nanos / (double) NANOS_PER_MILLI;
+    }
+
+    /** Returns NANOS in microseconds. */
+    private static double micros(long nanos) {
+        return nanos / (double) NANOS_PER_MICRO;
+    }
+
+    /** Returns X with three decimal places. */
+    private static String decimal(double x) {
+        return String.format(Locale.ROOT, "%.3f", x);
+    }
+
+    /** Returns S as a JSON string. */
+    private static String quote(String s) {
+        StringBuilder out = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /** Returns the format GITLET_TRACE asks for, or null if it is not
+     *  set. Any value but the name of a format asks for a summary. */
+    private static String envFormat() {
+        String f = System.getenv("GITLET_TRACE");
+        if (f == null || f.isEmpty()) {
+            return null;
+        }
+        return Arrays.asList(FORMATS).contains(f) ? f : SUMMARY;
+    }
+
+    /** Counts objects read from the object store. */
+    static final int OBJECTS_READ = 0;
+    /** Counts objects written to the object store. */
+    static final int OBJECTS_WRITTEN = 1;
+    /** Counts bytes run through SHA-1. */
+    static final int BYTES_HASHED = 2;
+    /** Counts lookups ObjectCache answered. */
+    static final int CACHE_HITS = 3;
+    /** Counts lookups it could not. */
+    static final int CACHE_MISSES = 4;
+    /** Counts names read from directory listings. */
+    static final int FILES_LISTED = 5;
+    /** Counts working files written. */
+    static final int FILES_WRITTEN = 6;
+
+    /** The counters' names, by number. */
+    private static final String[] COUNTER_NAMES = {
+        "objects_read", "objects_written", "bytes_hashed", "cache_hits",
+        "cache_misses", "files_listed", "files_written",
+    };
+
+    /** The counters, by number. */
+    private static final AtomicLongArray COUNTS =
+        new AtomicLongArray(COUNTER_NAMES.length);
+
+    /** The phases recorded so far. */
+    private static final Queue<Event> EVENTS = new ConcurrentLinkedQueue<>();
+
+    /** The option turning tracing on. */
+    static final String FLAG = "--trace";
+
+    /** The summary format. */
+    static final String SUMMARY = "summary";
+    /** The JSON format. */
+    static final String JSON = "json";
+    /** The Chrome trace format. */
+    static final String CHROME = "chrome";
+    /** Every format. */
+    private static final String[] FORMATS = {SUMMARY, JSON, CHROME};
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+    /** Nanoseconds in a microsecond. */
+    private static final long NANOS_PER_MICRO = 1_000;
+
+    /** The format GITLET_TRACE asks for, or null. */
+    private static final String ENV_FORMAT = envFormat();
+
+    /** The span begin returns while tracing is off. */
+    private static final Span OFF = new Span("off");
+
+    /** True while a command is being traced. */
+    private static volatile boolean on;
+
+    /** The current command's format, or null. */
+    private static String format;
+
+    /** When the current command began, by System.nanoTime. */
+    private static long origin;
+
+}
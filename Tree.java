@@ -0,0 +1,315 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** A directory snapshot: the blobs of the files directly inside one
+ * directory and the trees of its subdirectories, each by name. Trees
+ * are content-addressed like blobs, so a commit that leaves a
+ * directory untouched shares that directory's tree, and everything
+ * below it, with its parent by hash; making a commit only writes the
+ * trees on the paths to the files that changed.
+ *
+ * A tree is stored in the trees directory as its entries sorted by
+ * name, each a type byte, the UTF-8 name, a zero byte and the 20-byte
+ * id of the blob or tree.
+ * @author Hannah Verdonk */
+class Tree {
+
+    /** An empty tree. */
+    Tree() {
+        blobs = new TreeMap<>();
+        trees = new TreeMap<>();
+    }
+
+    /** A tree with the entries of T, which may be changed without
+     *  changing T. */
+    private Tree(Tree t) {
+        blobs = new TreeMap<>(t.blobs);
+        trees = new TreeMap<>(t.trees);
+    }
+
+    /** Returns the shaCode of the tree that results from applying
+     *  CHANGES to the tree named ROOT (or to an empty tree, if ROOT is
+     *  null). CHANGES maps '/'-separated file paths to their new blob
+     *  shaCodes, or to null for files to remove. Only the trees along
+     *  the changed paths are rewritten. */
+    static String update(String root, Map<String, String> changes) {
+        String result = updateDir(root, "", changes);
+        return result == null ? write(new Tree()) : result;
+    }
+
+    /** Returns the shaCode of a tree holding exactly FILES, a map of
+     *  '/'-separated file paths to blob shaCodes. */
+    static String build(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns a map of every file path under the tree named SHA to its
+     *  blob shaCode, which may not be modified. */
+    @SuppressWarnings("unchecked")
+    static Map<String, String> flatten(String sha) {
+        Map<String, String> files =
+            (Map<String, String>) ObjectCache.get(FILES_KEY + sha);
+        if (files == null) {
+            HashMap<String, String> all = new HashMap<>();
+            flatten(sha, "", all);
+            files = Collections.unmodifiableMap(all);
+            ObjectCache.put(FILES_KEY + sha, files, ObjectCache.OBJECT_BYTES
+                            + (long) ObjectCache.ENTRY_BYTES * all.size());
+        }
+        return files;
+    }
+
+    /** Adds the files under the tree named SHA to FILES, with PREFIX
+     *  prepended to their paths. */
+    private static void flatten(String sha, String prefix,
+                                Map<String, String> files) {
+        Tree t = read(sha);
+        for (Map.Entry<String, String> e : t.blobs.entrySet()) {
+            files.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t.trees.entrySet()) {
+            flatten(e.getValue(), prefix + e.getKey() + "/", files);
+        }
+    }
+
+    /** Adds the tree named SHA and every tree below it to TREES, and
+     *  the blobs they hold to BLOBS. Subtrees already in TREES are not
+     *  read again. TREES and BLOBS may be shared between threads. */
+    static void reachable(String sha, Set<String> trees, Set<String> blobs) {
+        if (!trees.add(sha)) {
+            return;
+        }
+        Tree t = read(sha);
+        blobs.addAll(t.blobs.values());
+        for (String child : t.trees.values()) {
+            reachable(child, trees, blobs);
+        }
+    }
+
+    /** Returns the shaCode of the stored tree CONTENTS, adding the
+     *  trees and blobs it names to TREES and BLOBS. Throws an unchecked
+     *  exception if CONTENTS are not a well-formed tree. */
+    static String check(byte[] contents, Set<String> trees,
+                        Set<String> blobs) {
+        Tree t = decode(contents);
+        trees.addAll(t.trees.values());
+        blobs.addAll(t.blobs.values());
+        return sha1(KIND, contents);
+    }
+
+    /** Adds to CHANGES every file path whose blob differs between the
+     *  trees named A and B (either of which may be null, for an empty
+     *  tree), mapped to {blob in A, blob in B}, with null for a side
+     *  lacking the file. Subtrees with equal shaCodes are skipped
+     *  without being read. */
+    static void diff(String a, String b, Map<String, String[]> changes) {
+        diff(a, b, "", changes);
+    }
+
+    /** Adds the differences between the trees named A and B to
+     *  CHANGES, with PREFIX prepended to their paths. */
+    private static void diff(String a, String b, String prefix,
+                             Map<String, String[]> changes) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Tree ta = a == null ? new Tree() : read(a);
+        Tree tb = b == null ? new Tree() : read(b);
+        TreeMap<String, String> names = new TreeMap<>(ta.blobs);
+        names.putAll(tb.blobs);
+        for (String name : names.keySet()) {
+            String x = ta.blobs.get(name);
+            String y = tb.blobs.get(name);
+            if (x == null || !x.equals(y)) {
+                changes.put(prefix + name, new String[] {x, y});
+            }
+        }
+        TreeMap<String, String> dirs = new TreeMap<>(ta.trees);
+        dirs.putAll(tb.trees);
+        for (String dir : dirs.keySet()) {
+            diff(ta.trees.get(dir), tb.trees.get(dir),
+                 prefix + dir + "/", changes);
+        }
+    }
+
+    /** Applies CHANGES to the tree named SHA, the directory PREFIX, as
+     *  for update, returning the new tree's shaCode, or null if it
+     *  would be empty. A name left naming both a file and a directory
+     *  names the directory if CHANGES reach into it, since a file
+     *  staged there means the directory replaced the file; otherwise
+     *  the commit is refused. */
+    private static String updateDir(String sha, String prefix,
+                                    Map<String, String> changes) {
+        Tree t = sha == null ? new Tree() : new Tree(read(sha));
+        TreeMap<String, Map<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (e.getValue() == null) {
+                    t.blobs.remove(path);
+                } else {
+                    t.blobs.put(path, e.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                                      k -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : below.entrySet()) {
+            String dir = e.getKey();
+            String child = updateDir(t.trees.get(dir), prefix + dir + "/",
+                                     e.getValue());
+            if (child == null) {
+                t.trees.remove(dir);
+            } else {
+                t.trees.put(dir, child);
+            }
+        }
+        for (String dir : t.trees.keySet()) {
+            if (t.blobs.containsKey(dir)) {
+                if (!below.containsKey(dir)) {
+                    throw new GitletException("Cannot commit " + prefix + dir
+                                              + " as both a file and a "
+                                              + "directory.");
+                }
+                t.blobs.remove(dir);
+            }
+        }
+        if (t.blobs.isEmpty() && t.trees.isEmpty()) {
+            return null;
+        }
+        return write(t);
+    }
+
+    /** Stores tree T, unless it is already stored, and returns its
+     *  shaCode. */
+    static String write(Tree t) {
+        byte[] contents = t.encode();
+        String sha = sha1(KIND, contents);
+        if (!ObjectPath.exists(Main.TREES, sha) && !PackFile.contains(sha)) {
+            writeCompressed(ObjectPath.create(Main.TREES, sha), contents);
+        }
+        return sha;
+    }
+
+    /** Returns the tree named SHA, loose or packed, which may not be
+     *  modified. */
+    @SuppressWarnings("try")
+    static Tree read(String sha) {
+        Tree cached = (Tree) ObjectCache.get(TREE_KEY + sha);
+        if (cached != null) {
+            return cached;
+        }
+        Trace.count(Trace.OBJECTS_READ, 1);
+        Tree t;
+        try (Trace.Span s = Trace.begin("read tree")) {
+            File f = ObjectPath.of(Main.TREES, sha);
+            byte[] contents;
+            if (f.exists()) {
+                try (InputStream in = openObject(f)) {
+                    contents = in.readAllBytes();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            } else {
+                contents = PackFile.read(sha);
+                if (contents == null) {
+                    throw new IllegalArgumentException("no tree " + sha);
+                }
+            }
+            t = decode(contents);
+        }
+        ObjectCache.put(TREE_KEY + sha, t, ObjectCache.OBJECT_BYTES
+                        + (long) ObjectCache.ENTRY_BYTES * t.size());
+        return t;
+    }
+
+    /** Returns my number of entries. */
+    private int size() {
+        return blobs.size() + trees.size();
+    }
+
+    /** Returns my stored form. */
+    private byte[] encode() {
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (Map.Entry<String, String> e : blobs.entrySet()) {
+            entries.put(e.getKey(), BLOB + e.getValue());
+        }
+        for (Map.Entry<String, String> e : trees.entrySet()) {
+            entries.put(e.getKey(), DIR + e.getValue());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            String v = e.getValue();
+            out.write(v.charAt(0));
+            out.writeBytes(e.getKey().getBytes(StandardCharsets.UTF_8));
+            out.write(0);
+            out.writeBytes(PackFile.unhex(v.substring(1)));
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the tree whose stored form is CONTENTS. */
+    private static Tree decode(byte[] contents) {
+        Tree t = new Tree();
+        int i = 0;
+        while (i < contents.length) {
+            char type = (char) contents[i];
+            int end = i + 1;
+            while (contents[end] != 0) {
+                end += 1;
+            }
+            String name = new String(contents, i + 1, end - i - 1,
+                                     StandardCharsets.UTF_8);
+            byte[] id = new byte[ID_BYTES];
+            System.arraycopy(contents, end + 1, id, 0, ID_BYTES);
+            if (type == DIR) {
+                t.trees.put(name, hex(id));
+            } else {
+                t.blobs.put(name, hex(id));
+            }
+            i = end + 1 + ID_BYTES;
+        }
+        return t;
+    }
+
+    /** Blob shaCodes of the files in this directory, by name. */
+    private final TreeMap<String, String> blobs;
+
+    /** Tree shaCodes of the subdirectories of this directory, by name. */
+    private final TreeMap<String, String> trees;
+
+    /** Hashed ahead of a tree's contents, so no tree shares its shaCode
+     *  with a blob holding the same bytes. */
+    private static final String KIND = "tree\0";
+
+    /** Type byte of an entry naming a blob. */
+    private static final char BLOB = 'b';
+
+    /** Type byte of an entry naming a subdirectory's tree. */
+    private static final char DIR = 't';
+
+    /** Prefix of the keys of trees in the ObjectCache. */
+    private static final String TREE_KEY = "tree ";
+
+    /** Prefix of the keys of flattened trees in the ObjectCache. */
+    private static final String FILES_KEY = "files ";
+
+    /** Size of an object id in bytes. */
+    private static final int ID_BYTES = 20;
+
+}
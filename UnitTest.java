@@ -1,8 +1,28 @@
 package gitlet;
 
 import ucb.junit.textui;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Hannah Verdonk
  */
@@ -14,11 +34,416 @@ public class UnitTest {
         textui.runClasses(UnitTest.class);
     }
 
+    /** Makes a repository in a temporary directory. Main finds its
+     *  repository through user.dir when it is first loaded, so the
+     *  property is set before anything touches Main. */
+    @BeforeClass
+    public static void createRepository() throws IOException {
+        dir = Files.createTempDirectory("gitlet-test");
+        System.setProperty("user.dir", dir.toString());
+        Main.doInit();
+    }
+
+    /** Removes the repository. */
+    @AfterClass
+    public static void deleteRepository() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+        }
+    }
+
     /** A dummy unit test to quiet the compiler. */
     @Test
     public void dummyTest() {
     }
 
-}
+    /** Updating a tree leaves the tree it started from, which stays
+     *  cached, as it was. */
+    @Test
+    public void treeUpdateLeavesRootUnchanged() {
+        Map<String, String> files = new TreeMap<>();
+        files.put("a.txt", Utils.sha1("a"));
+        files.put("d/x.txt", Utils.sha1("x"));
+        String root = Tree.build(files);
+
+        Map<String, String> first = new TreeMap<>();
+        first.put("b.txt", Utils.sha1("b"));
+        first.put("d/y.txt", Utils.sha1("y"));
+        Tree.update(root, first);
+
+        Map<String, String> second = new TreeMap<>();
+        second.put("c.txt", Utils.sha1("c"));
+        Map<String, String> expected = new TreeMap<>(files);
+        expected.putAll(second);
+        assertEquals(expected, Tree.flatten(Tree.update(root, second)));
+        assertEquals(files, Tree.flatten(root));
+    }
 
+    /** A directory staged where a file was replaces the file. */
+    @Test
+    public void treeDirectoryReplacesFile() {
+        String root = Tree.build(Map.of("x", Utils.sha1("x")));
+        Map<String, String> expected = Map.of("x/y", Utils.sha1("y"));
+        assertEquals(expected, Tree.flatten(Tree.update(root, expected)));
+    }
+
+    /** A file staged where a directory still is cannot be committed. */
+    @Test(expected = GitletException.class)
+    public void treeFileOverDirectory() {
+        String root = Tree.build(Map.of("x/y", Utils.sha1("y")));
+        Tree.update(root, Map.of("x", Utils.sha1("x")));
+    }
 
+    /** A delta rebuilds its target from its base, whether the target
+     *  was edited in the middle, at either end, or not at all. */
+    @Test
+    public void deltaRoundTrip() {
+        byte[] base = version(-1);
+        byte[] middle = version(LINES / 2);
+        byte[] longer = bytes(new String(base, StandardCharsets.UTF_8)
+                              + "one more line\n");
+        byte[] shorter = bytes(new String(base, StandardCharsets.UTF_8)
+                               .substring(LINE.length()));
+        for (byte[] target : new byte[][] {base, middle, longer, shorter}) {
+            byte[] delta = Delta.create(base, target);
+            assertNotNull(delta);
+            assertArrayEquals(target, Delta.apply(base, delta));
+        }
+    }
+
+    /** No delta is made from or to an empty file, or between files with
+     *  nothing in common. */
+    @Test
+    public void deltaNotWorthIt() {
+        byte[] random = new byte[LINES * LINE.length()];
+        new Random(SEED).nextBytes(random);
+        assertNull(Delta.create(new byte[0], version(0)));
+        assertNull(Delta.create(version(0), new byte[0]));
+        assertNull(Delta.create(version(0), random));
+    }
+
+    /** Every version of a file with more versions than one delta chain
+     *  may hold comes out of a pack as it went in, and the chains are
+     *  cut at MAX_DEPTH: the newest version and the one after a full
+     *  chain are stored whole. */
+    @Test
+    public void packRoundTripAtMaxDepth() {
+        int n = 2 * PackFile.MAX_DEPTH + 2;
+        List<String> shas = new ArrayList<>();
+        String parent = Commit.getLastCommitSha();
+        for (int k = 0; k < n; k += 1) {
+            String sha = BlobStore.put(version(k));
+            HashMap<String, String> files = new HashMap<>();
+            files.put("f.txt", sha);
+            Commit c = new Commit("pack " + k, parent, null, files);
+            c.write();
+            shas.add(sha);
+            parent = c.shaCode();
+        }
+        int[] counts = PackFile.packAll();
+        assertEquals(n - 2, counts[1]);
+        for (int k = 0; k < n; k += 1) {
+            assertArrayEquals(version(k), PackFile.read(shas.get(k)));
+        }
+    }
+
+    /** A commit's generation is one more than the larger of its
+     *  parents', and its record names both parents. */
+    @Test
+    public void graphGenerations() {
+        String root = Commit.getLastCommitSha();
+        String a = commit("generation a", root, null);
+        String b = commit("generation b", root, null);
+        String c = commit("generation c", b, null);
+        String m = commit("generation m", a, c);
+        CommitGraph g = CommitGraph.load();
+        assertEquals(1, g.generation(g.indexOf(root)));
+        assertEquals(2, g.generation(g.indexOf(a)));
+        assertEquals(3, g.generation(g.indexOf(c)));
+        assertEquals(4, g.generation(g.indexOf(m)));
+        assertEquals(g.indexOf(a), g.parent(g.indexOf(m)));
+        assertEquals(g.indexOf(c), g.secondParent(g.indexOf(m)));
+        assertEquals(CommitGraph.NONE, g.secondParent(g.indexOf(c)));
+    }
+
+    /** A commit whose parent never reached the graph, as after a crash,
+     *  is appended with its parent, not without it. */
+    @Test
+    public void graphRecoversMissingParent() {
+        Commit lost = new Commit("graph lost", Commit.getLastCommitSha(),
+                                 null, new HashMap<>());
+        lost.write();
+        String child = commit("graph child", lost.shaCode(), null);
+        CommitGraph g = CommitGraph.load();
+        assertTrue(g.indexOf(lost.shaCode()) >= 0);
+        assertEquals(g.indexOf(lost.shaCode()), g.parent(g.indexOf(child)));
+        assertEquals(3, g.generation(g.indexOf(child)));
+    }
+
+    /** In a criss-cross history, where each branch merged the other,
+     *  either of the two best common ancestors is found, not the older
+     *  commit both of them descend from. */
+    @Test
+    public void mergeBaseCrissCross() {
+        String base = commit("criss-cross base", Commit.getLastCommitSha(),
+                             null);
+        String x1 = commit("criss-cross x1", base, null);
+        String y1 = commit("criss-cross y1", base, null);
+        String x2 = commit("criss-cross x2", x1, y1);
+        String y2 = commit("criss-cross y2", y1, x1);
+        CommitGraph g = CommitGraph.load();
+        int found = MergeBase.find(g, g.indexOf(x2), g.indexOf(y2));
+        assertTrue(found == g.indexOf(x1) || found == g.indexOf(y1));
+    }
+
+    /** A common ancestor reached only through a merge's second parent
+     *  is found, from either side. */
+    @Test
+    public void mergeBaseThroughSecondParent() {
+        String root = Commit.getLastCommitSha();
+        String main = commit("second parent main", root, null);
+        String side = commit("second parent side", root, null);
+        String merged = commit("second parent merge", main, side);
+        String topic = commit("second parent topic", side, null);
+        CommitGraph g = CommitGraph.load();
+        assertEquals(g.indexOf(side),
+                     MergeBase.find(g, g.indexOf(merged), g.indexOf(topic)));
+        assertEquals(g.indexOf(side),
+                     MergeBase.find(g, g.indexOf(topic), g.indexOf(merged)));
+    }
+
+    /** A commit is its own merge base, and the merge base of a commit
+     *  and one of its ancestors is the ancestor. */
+    @Test
+    public void mergeBaseOfAncestor() {
+        String a = commit("ancestor a", Commit.getLastCommitSha(), null);
+        String b = commit("ancestor b", a, null);
+        CommitGraph g = CommitGraph.load();
+        assertEquals(g.indexOf(b), MergeBase.find(g, g.indexOf(b),
+                                                  g.indexOf(b)));
+        assertEquals(g.indexOf(a), MergeBase.find(g, g.indexOf(b),
+                                                  g.indexOf(a)));
+    }
+
+    /** Returns the id of a new commit with message MSG and parents ONE
+     *  and TWO, which may be null, stored and added to the graph. */
+    private static String commit(String msg, String one, String two) {
+        Commit c = new Commit(msg, one, two, new HashMap<>());
+        c.write();
+        CommitGraph.append(c);
+        return c.shaCode();
+    }
+
+    /** A unified diff shows the changed line with its context. */
+    @Test
+    public void diffUnified() {
+        StringBuilder out = new StringBuilder();
+        new Diff(bytes("a\nb\nc\n"), bytes("a\nB\nc\n"))
+            .unified(out, Diff.CONTEXT);
+        assertEquals("@@ -1,3 +1,3 @@\n a\n-b\n+B\n c\n", out.toString());
+    }
+
+    /** Empty and identical versions, and a last line that gains a
+     *  newline, are compared line by line like any others. */
+    @Test
+    public void diffEdgeCases() {
+        byte[] empty = new byte[0];
+        assertTrue(new Diff(empty, empty).isEmpty());
+        assertTrue(new Diff(version(0), version(0)).isEmpty());
+        assertHunks(new Diff(empty, bytes("a\nb\n")), 0, 0, 0, 2);
+        assertHunks(new Diff(bytes("a\nb\n"), empty), 0, 2, 0, 0);
+        assertHunks(new Diff(bytes("a\nb"), bytes("a\nb\n")), 1, 2, 1, 2);
+
+        StringBuilder out = new StringBuilder();
+        new Diff(bytes("a\nb"), bytes("a\nc")).unified(out, Diff.CONTEXT);
+        assertEquals("@@ -1,2 +1,2 @@\n a\n-b\n\\ No newline at end of file\n"
+                     + "+c\n\\ No newline at end of file\n", out.toString());
+    }
+
+    /** On small random versions, the diff is a valid alignment and as
+     *  short as the longest common subsequence allows. */
+    @Test
+    public void diffIsMinimal() {
+        Random r = new Random(SEED);
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            byte[] a = randomLines(r, r.nextInt(TRIAL_LINES));
+            byte[] b = randomLines(r, r.nextInt(TRIAL_LINES));
+            Diff d = new Diff(a, b);
+            assertEquals(d.oldSize() + d.newSize()
+                         - 2 * commonLines(d, a, b), edits(d, a, b));
+        }
+    }
+
+    /** Versions sharing every line in a different order, where the
+     *  search for a shortest diff gives up at its cost limit, still get
+     *  a valid diff, and quickly. */
+    @Test(timeout = 10000)
+    public void diffCostLimit() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < SHUFFLED_LINES; i += 1) {
+            lines.add("line " + i + "\n");
+        }
+        byte[] a = bytes(String.join("", lines));
+        Collections.shuffle(lines, new Random(SEED));
+        byte[] b = bytes(String.join("", lines));
+        Diff d = new Diff(a, b);
+        assertTrue(edits(d, a, b) < 2 * SHUFFLED_LINES);
+    }
+
+    /** Changes to different lines, the same change on both sides, and
+     *  a line both sides deleted all merge cleanly. */
+    @Test
+    public void mergeClean() {
+        String base = "a\nb\nc\nd\ne\n";
+        assertMerge("a\nB\nc\nD\ne\n", false,
+                    base, "a\nB\nc\nd\ne\n", "a\nb\nc\nD\ne\n");
+        assertMerge("a\nB\nc\nd\ne\n", false,
+                    base, "a\nB\nc\nd\ne\n", "a\nB\nc\nd\ne\n");
+        assertMerge("a\nb\nd\ne\n", false,
+                    base, "a\nb\nd\ne\n", "a\nb\nd\ne\n");
+        assertMerge(base, false, base, base, base);
+    }
+
+    /** Conflict markers surround only the lines in dispute, and, as in
+     *  diff3, changes to adjacent lines are in dispute. */
+    @Test
+    public void mergeConflictPlacement() {
+        assertMerge("a\nb\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nd\ne\n",
+                    true, "a\nb\nc\nd\ne\n", "a\nb\nX\nd\ne\n",
+                    "a\nb\nY\nd\ne\n");
+        assertMerge("a\n<<<<<<< HEAD\nX\n=======\n>>>>>>>\nc\n",
+                    true, "a\nb\nc\n", "a\nX\nc\n", "a\nc\n");
+        assertMerge("a\n<<<<<<< HEAD\nc\n=======\nb\n>>>>>>>\nd\n",
+                    true, "a\nb\nc\nd\n", "a\nc\nd\n", "a\nb\nd\n");
+    }
+
+    /** Empty versions, and versions whose last line has no newline,
+     *  merge like any others, and a conflict marker always starts a
+     *  line. */
+    @Test
+    public void mergeEdgeCases() {
+        assertMerge("", false, "", "", "");
+        assertMerge("a\n", false, "", "a\n", "");
+        assertMerge("", false, "a\n", "", "");
+        assertMerge("<<<<<<< HEAD\na\n=======\nb\n>>>>>>>\n", true,
+                    "", "a\n", "b\n");
+        assertMerge("x\n<<<<<<< HEAD\nB\n=======\nC\n>>>>>>>\n", true,
+                    "x\nb", "x\nB", "x\nC");
+        assertMerge("x\nb\n", false, "x\nb", "x\nb\n", "x\nb");
+    }
+
+    /** Asserts that merging OURS and THEIRS from BASE gives EXPECTED,
+     *  conflicted if CONFLICTED. */
+    private static void assertMerge(String expected, boolean conflicted,
+                                    String base, String ours,
+                                    String theirs) {
+        FileMerge m = new FileMerge(bytes(base), bytes(ours), bytes(theirs));
+        assertEquals(expected, new String(m.contents(),
+                                          StandardCharsets.UTF_8));
+        assertEquals(conflicted, m.conflicted());
+    }
+
+    /** Asserts that D has exactly one hunk, {I0, I1, J0, J1}. */
+    private static void assertHunks(Diff d, int i0, int i1, int j0, int j1) {
+        assertEquals(1, d.hunks().size());
+        assertArrayEquals(new int[] {i0, i1, j0, j1}, d.hunks().get(0));
+    }
+
+    /** Returns the number of lines D deletes from A and inserts into B,
+     *  checking that the lines it leaves alone are equal. */
+    private static int edits(Diff d, byte[] a, byte[] b) {
+        int i = 0;
+        int j = 0;
+        int edits = 0;
+        List<int[]> hunks = new ArrayList<>(d.hunks());
+        hunks.add(new int[] {d.oldSize(), d.oldSize(),
+                             d.newSize(), d.newSize()});
+        for (int[] h : hunks) {
+            assertEquals(h[0] - i, h[2] - j);
+            for (; i < h[0]; i += 1, j += 1) {
+                assertTrue(Arrays.equals(
+                    a, d.oldOffset(i), d.oldOffset(i + 1),
+                    b, d.newOffset(j), d.newOffset(j + 1)));
+            }
+            edits += (h[1] - h[0]) + (h[3] - h[2]);
+            i = h[1];
+            j = h[3];
+        }
+        return edits;
+    }
+
+    /** Returns the length of the longest common subsequence of the
+     *  lines of A and B, as split by D. */
+    private static int commonLines(Diff d, byte[] a, byte[] b) {
+        int n = d.oldSize();
+        int m = d.newSize();
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i -= 1) {
+            for (int j = m - 1; j >= 0; j -= 1) {
+                if (Arrays.equals(
+                        a, d.oldOffset(i), d.oldOffset(i + 1),
+                        b, d.newOffset(j), d.newOffset(j + 1))) {
+                    lcs[i][j] = lcs[i + 1][j + 1] + 1;
+                } else {
+                    lcs[i][j] = Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+        }
+        return lcs[0][0];
+    }
+
+    /** Returns N lines drawn by R from a few distinct ones. */
+    private static byte[] randomLines(Random r, int n) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            s.append((char) ('a' + r.nextInt(ALPHABET))).append('\n');
+        }
+        return bytes(s.toString());
+    }
+
+    /** Returns the UTF-8 bytes of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns LINES lines of LINE, with line K, if there is one,
+     *  changed. */
+    private static byte[] version(int k) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < LINES; i += 1) {
+            s.append(i == k ? "changed line " + k + "\n" : LINE);
+        }
+        return bytes(s.toString());
+    }
+
+    /** A line of a test file. */
+    private static final String LINE = "the quick brown fox jumps\n";
+
+    /** Number of lines in a test file. */
+    private static final int LINES = 40;
+
+    /** Number of random pairs of versions diffed. */
+    private static final int TRIALS = 500;
+
+    /** Most lines in each of them. */
+    private static final int TRIAL_LINES = 30;
+
+    /** Number of distinct lines they are made of. */
+    private static final int ALPHABET = 4;
+
+    /** Number of lines in the shuffled versions. */
+    private static final int SHUFFLED_LINES = 20000;
+
+    /** Seed of random test data. */
+    private static final long SEED = 61;
+
+    /** The directory holding the test repository. */
+    private static Path dir;
+
+}
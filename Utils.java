@@ -1,22 +1,35 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 
 /** Assorted utilities.
@@ -31,28 +44,51 @@ class Utils {
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
+    @SuppressWarnings("try")
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
+        try (Trace.Span s = Trace.begin("hash")) {
+            MessageDigest md = newSha1();
+            long hashed = 0;
             for (Object val : vals) {
+                byte[] bytes;
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    bytes = (byte[]) val;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
                 } else {
-                    throw new IllegalArgumentException("improper type to sha1");
+                    throw new IllegalArgumentException(
+                        "improper type to sha1");
                 }
+                md.update(bytes);
+                hashed += bytes.length;
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            Trace.count(Trace.BYTES_HASHED, hashed);
+            return hex(md.digest());
+        }
+    }
+
+    /** Returns a fresh SHA-1 MessageDigest, for hashing streams. */
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns DIGEST as a lowercase hexadecimal numeral. */
+    static String hex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** The hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -132,25 +168,157 @@ class Utils {
         }
     }
 
+    /** Write the result of concatenating the bytes in CONTENTS to FILE,
+     *  as writeContents does, but into a new file beside it that is then
+     *  renamed over FILE, so that FILE is never seen half-written. */
+    static void writeAtomically(File file, Object... contents) {
+        File tmp;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp",
+                                      file.getAbsoluteFile().getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            writeContents(tmp, contents);
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            tmp.delete();
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     *  FILE may be compressed or, if written by an earlier version of
+     *  Gitlet, a bare serialized object.
      *  Throws IllegalArgumentException in case of problems. */
+    @SuppressWarnings("try")
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
+        try (Trace.Span s = Trace.begin("deserialize");
+             InputStream raw = openObject(file);
+             ObjectInputStream in = new ObjectInputStream(raw)) {
+            return expectedClass.cast(in.readObject());
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Write OBJ to FILE, compressed at COMPRESSION_LEVEL. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        writeCompressed(file, serialize(obj));
+    }
+
+    /** Write CONTENTS to FILE behind an object header, deflated at
+     *  COMPRESSION_LEVEL unless compression is turned off. FILE appears
+     *  whole or not at all, and is flushed to disk before the next ref
+     *  update. */
+    @SuppressWarnings("try")
+    static void writeCompressed(File file, byte[] contents) {
+        Trace.count(Trace.OBJECTS_WRITTEN, 1);
+        try (Trace.Span s = Trace.begin("write object")) {
+            compress(file, contents);
+        }
+    }
+
+    /** Writes CONTENTS to FILE as writeCompressed does, untimed. */
+    private static void compress(File file, byte[] contents) {
+        if (COMPRESSION_LEVEL == 0) {
+            writeAtomically(file, OBJECT_MAGIC, new byte[] {FORMAT_RAW},
+                            contents);
+            LockFile.written(file);
+            return;
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.writeBytes(OBJECT_MAGIC);
+        stream.write(FORMAT_DEFLATE);
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+        try (DeflaterOutputStream out =
+                 new DeflaterOutputStream(stream, deflater)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+        writeAtomically(file, stream.toByteArray());
+        LockFile.written(file);
+    }
+
+    /** Returns a stream over the uncompressed contents of the object
+     *  stored in FILE, whichever format version it was written in. */
+    static InputStream openObject(File file) throws IOException {
+        BufferedInputStream in =
+            new BufferedInputStream(new FileInputStream(file));
+        int version;
+        try {
+            in.mark(OBJECT_MAGIC.length + 1);
+            byte[] magic = in.readNBytes(OBJECT_MAGIC.length);
+            if (!Arrays.equals(magic, OBJECT_MAGIC)) {
+                in.reset();
+                return in;
+            }
+            version = in.read();
+        } catch (IOException excp) {
+            in.close();
+            throw excp;
+        }
+        if (version == FORMAT_RAW) {
+            return in;
+        } else if (version == FORMAT_DEFLATE) {
+            return new InflaterInputStream(in);
+        }
+        in.close();
+        throw new IllegalArgumentException("unknown object format "
+                                           + version);
+    }
+
+    /** Marks an object file with a format version byte. Serialized
+     *  objects written by earlier versions of Gitlet lack it. */
+    private static final byte[] OBJECT_MAGIC = {'g', 'o', 'b', 'j'};
+
+    /** Format version byte for objects stored uncompressed. */
+    static final byte FORMAT_RAW = 1;
+
+    /** Format version byte for objects stored deflated. */
+    static final byte FORMAT_DEFLATE = 2;
+
+    /** The zlib compression level used for newly written objects, from
+     *  0 (stored uncompressed) to 9, read from the GITLET_COMPRESSION
+     *  environment variable. */
+    static final int COMPRESSION_LEVEL = compressionLevel();
+
+    /** Returns the compression level requested through the environment,
+     *  or the zlib default if none (or nonsense) was given. */
+    private static int compressionLevel() {
+        String level = System.getenv("GITLET_COMPRESSION");
+        if (level != null && level.matches("[0-9]")) {
+            return Integer.parseInt(level);
+        }
+        return DEFAULT_LEVEL;
+    }
+
+    /** The compression level used when none is configured. */
+    private static final int DEFAULT_LEVEL = 6;
+
+    /** Return an object of type T deserialized from CONTENTS, casting it
+     *  to EXPECTEDCLASS. Throws IllegalArgumentException in case of
+     *  problems. */
+    @SuppressWarnings("try")
+    static <T extends Serializable> T deserialize(byte[] contents,
+                                                  Class<T> expectedClass) {
+        try (Trace.Span s = Trace.begin("deserialize");
+             ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(contents))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /* DIRECTORIES */
@@ -167,11 +335,16 @@ class Utils {
     /** Returns a list of the names of all plain files in the directory DIR, in
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
+    @SuppressWarnings("try")
     static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
+        String[] files;
+        try (Trace.Span s = Trace.begin("list directory")) {
+            files = dir.list(PLAIN_FILES);
+        }
         if (files == null) {
             return null;
         } else {
+            Trace.count(Trace.FILES_LISTED, files.length);
             Arrays.sort(files);
             return Arrays.asList(files);
         }
@@ -248,18 +421,13 @@ class Utils {
 
     /** Checks for untracked files in the current directory. */
     static void untrackedFileCheck() {
-        Commit last = Commit.getLastCommit();
-        File curr = new File(System.getProperty("user.dir"));
-        List<String> currFiles = plainFilenamesIn(curr);
-        if (currFiles == null) {
-            System.out.println("untrackedFileCheck is failing.");
-            return;
-        }
+        Map<String, String> tracked = Commit.getLastCommit().data();
+        List<String> currFiles = workingFiles();
         for (String name : currFiles) {
             if (name.equals(".DS_Store")) {
                 continue;
             }
-            if (!last.data().containsKey(name)) {
+            if (!tracked.containsKey(name)) {
                 String m1 = "There is an untracked file in the way;";
                 String m2 = " delete it or add it first.";
                 throw new GitletException(m1 + m2);
@@ -267,4 +435,65 @@ class Utils {
         }
     }
 
+    /** Returns the paths of all plain files in the working directory
+     *  and its subdirectories, other than Gitlet's own, relative to
+     *  the working directory and separated by '/', in lexicographic
+     *  order. */
+    @SuppressWarnings("try")
+    static List<String> workingFiles() {
+        Path root = Paths.get(System.getProperty("user.dir"));
+        List<String> files = new ArrayList<>();
+        try (Trace.Span s = Trace.begin("list working files")) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        Path dir, BasicFileAttributes attrs) {
+                    if (dir.getFileName() != null
+                            && dir.getFileName().toString().equals(".gitlet")
+                            && dir.getParent().equals(root)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(root.relativize(file).toString()
+                                  .replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.FILES_LISTED, files.size());
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Deletes the working file at PATH, relative to the working
+     *  directory, then any directories it leaves empty. Refuses to,
+     *  and throws IllegalArgumentException, unless the working
+     *  directory contains a directory named .gitlet. */
+    static void deleteWorkingFile(String path) {
+        File root = new File(System.getProperty("user.dir"));
+        if (!new File(root, ".gitlet").isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File f = new File(root, path);
+        if (f.isDirectory() || !f.delete()) {
+            return;
+        }
+        for (File dir = f.getParentFile(); !dir.equals(root);
+             dir = dir.getParentFile()) {
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** A bounded pool of worker threads for work that is independent per
+ * file or per object, such as hashing and writing blobs. Its size is
+ * the number of available processors, or GITLET_THREADS if that
+ * environment variable is set.
+ * @author Hannah Verdonk */
+class Workers {
+
+    /** Returns the results of applying FN to each of ITEMS, in order,
+     *  computed in parallel. An unchecked exception thrown by FN is
+     *  rethrown as is. */
+    static <T, R> List<R> map(Collection<T> items,
+                              Function<? super T, ? extends R> fn) {
+        if (items.size() < 2 || THREADS == 1) {
+            List<R> result = new ArrayList<>();
+            for (T item : items) {
+                result.add(fn.apply(item));
+            }
+            return result;
+        }
+        try {
+            return pool().submit(() -> items.parallelStream().map(fn)
+                    .collect(Collectors.<R>toList())).get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the pool, creating it the first time it is needed. */
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(THREADS);
+        }
+        return pool;
+    }
+
+    /** Returns the number of worker threads to use. */
+    private static int threads() {
+        String n = System.getenv("GITLET_THREADS");
+        if (n != null && n.matches("[1-9][0-9]*")) {
+            return Integer.parseInt(n);
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** The shared pool, or null until first needed. */
+    private static ForkJoinPool pool;
+
+    /** The number of worker threads. */
+    static final int THREADS = threads();
+
+}
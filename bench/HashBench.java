@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of hashing a blob, from memory and streamed from a file,
+ * which needs no repository.
+ * @author Hannah Verdonk */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBench {
+
+    /** Size of the blob, in bytes. */
+    @Param({"4096", "1048576"})
+    public int size;
+
+    /** Makes the blob, and a file holding it. */
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        contents = new byte[size];
+        new Random(SyntheticRepo.SEED).nextBytes(contents);
+        file = File.createTempFile("gitlet-bench", null);
+        Utils.writeContents(file, contents);
+    }
+
+    /** Removes the file. */
+    @TearDown(Level.Trial)
+    public void delete() {
+        file.delete();
+    }
+
+    /** Hashing the blob in memory. */
+    @Benchmark
+    public String inMemory() {
+        return Utils.sha1(contents);
+    }
+
+    /** Hashing the blob as BlobStore does a working file, streaming it
+     *  through the digest. */
+    @Benchmark
+    public String streamed() {
+        return BlobStore.hash(file);
+    }
+
+    /** The blob. */
+    private byte[] contents;
+
+    /** A file holding the blob. */
+    private File file;
+
+}
@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of commands that leave the repository as they found it:
+ * log, status, finding a split point, and checking out a branch (which
+ * switches between master and a branch, and so returns to where it
+ * started every second invocation).
+ * @author Hannah Verdonk */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReadBench {
+
+    /** The log command. */
+    @Benchmark
+    public void log(SyntheticRepo repo) {
+        RepoGenerator.run("log");
+    }
+
+    /** The status command. */
+    @Benchmark
+    public void status(SyntheticRepo repo) {
+        RepoGenerator.run("status");
+    }
+
+    /** Finding where the first branch split from master. */
+    @Benchmark
+    public String splitPoint(SyntheticRepo repo) {
+        return Main.findSplitPoint(RepoGenerator.branchName(0));
+    }
+
+    /** The checkout command, switching to the first branch or back to
+     *  master. */
+    @Benchmark
+    public void checkoutBranch(SyntheticRepo repo) {
+        onBranch = !onBranch;
+        RepoGenerator.run("checkout", onBranch
+                          ? RepoGenerator.branchName(0) : "master");
+    }
+
+    /** True if the last checkout was of the first branch. */
+    private boolean onBranch;
+
+}
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Builds a synthetic repository to benchmark against, in the directory
+ * named by the user.dir property, through the same commands a user
+ * would run.
+ *
+ * The repository holds FILES files of about SIZE bytes each, spread
+ * over directories of up to FILES_PER_DIR files and made of lines of
+ * random letters. Master gets DEPTH commits on top of the first, each
+ * rewriting one line in one file out of every EDIT_RATIO. BRANCHES
+ * branches fork from master at evenly spaced commits and each get
+ * DEPTH / BRANCH_RATIO commits (at least one) of their own, made the
+ * same way, so merging one back touches files changed on both sides,
+ * mostly in different lines. Everything is drawn from a Random seeded
+ * with SEED, so the same shape always gives the same files.
+ * @author Hannah Verdonk */
+class RepoGenerator {
+
+    /** Usage: java gitlet.RepoGenerator FILES SIZE DEPTH BRANCHES [SEED]
+     *  in an empty directory. Builds the repository described above
+     *  there. */
+    public static void main(String... args) {
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Usage: java gitlet.RepoGenerator FILES "
+                               + "SIZE DEPTH BRANCHES [SEED]");
+            System.exit(1);
+        }
+        long seed = args.length == 5 ? Long.parseLong(args[4]) : 0;
+        new RepoGenerator(Integer.parseInt(args[0]),
+                          Integer.parseInt(args[1]),
+                          Integer.parseInt(args[2]),
+                          Integer.parseInt(args[3]), seed).generate();
+    }
+
+    /** A generator of repositories of FILES files of SIZE bytes, with
+     *  DEPTH commits on master and BRANCHES branches, drawn from
+     *  SEED. */
+    RepoGenerator(int files, int size, int depth, int branches, long seed) {
+        this.files = files;
+        lines = Math.max(1, size / LINE_LENGTH);
+        this.depth = depth;
+        this.branches = branches;
+        random = new Random(seed);
+    }
+
+    /** Builds the repository. */
+    void generate() {
+        run("init");
+        for (int i = 0; i < files; i += 1) {
+            File f = file(i);
+            f.getParentFile().mkdirs();
+            byte[] contents = new byte[lines * LINE_LENGTH];
+            for (int k = 0; k < lines; k += 1) {
+                fillLine(contents, k);
+            }
+            Utils.writeContents(f, contents);
+        }
+        run("add", "-A");
+        run("commit", "Generated " + files + " files.");
+
+        List<String> forks = new ArrayList<>();
+        for (int c = 1; c <= depth; c += 1) {
+            edit("master " + c);
+            if (forks.size() < branches
+                    && c * (branches + 1) >= (forks.size() + 1) * depth) {
+                String name = branchName(forks.size());
+                run("branch", name);
+                forks.add(name);
+            }
+        }
+        while (forks.size() < branches) {
+            String name = branchName(forks.size());
+            run("branch", name);
+            forks.add(name);
+        }
+        for (String name : forks) {
+            run("checkout", name);
+            for (int c = 1; c <= Math.max(1, depth / BRANCH_RATIO); c += 1) {
+                edit(name + " " + c);
+            }
+        }
+        run("checkout", "master");
+    }
+
+    /** Returns the name of the Ith branch made. */
+    static String branchName(int i) {
+        return "branch-" + i;
+    }
+
+    /** Returns the working file holding the Ith generated file. */
+    static File file(int i) {
+        return new File(System.getProperty("user.dir") + Main.S
+                        + name(i).replace('/', File.separatorChar));
+    }
+
+    /** Returns the name of the Ith generated file. */
+    static String name(int i) {
+        return "d" + (i / FILES_PER_DIR) + "/f" + i + ".txt";
+    }
+
+    /** Rewrites one line of one file in every EDIT_RATIO, and commits
+     *  the edits with MESSAGE. */
+    private void edit(String message) {
+        int count = Math.max(1, files / EDIT_RATIO);
+        List<String> names = new ArrayList<>();
+        for (int n = 0; n < count; n += 1) {
+            int i = random.nextInt(files);
+            File f = file(i);
+            byte[] contents = Utils.readContents(f);
+            fillLine(contents, random.nextInt(lines));
+            Utils.writeContents(f, contents);
+            names.add(name(i));
+        }
+        List<String> args = new ArrayList<>();
+        args.add("add");
+        args.addAll(names);
+        run(args.toArray(new String[0]));
+        run("commit", message);
+    }
+
+    /** Fills line K of CONTENTS with random letters and a newline. */
+    private void fillLine(byte[] contents, int k) {
+        int start = k * LINE_LENGTH;
+        for (int j = 0; j < LINE_LENGTH - 1; j += 1) {
+            contents[start + j] = (byte) ('a' + random.nextInt(LETTERS));
+        }
+        contents[start + LINE_LENGTH - 1] = '\n';
+    }
+
+    /** Runs the gitlet command ARGS, which must succeed. */
+    static void run(String... args) {
+        if (Main.run(args) != 0) {
+            throw new IllegalStateException("gitlet " + String.join(" ", args)
+                                            + " failed");
+        }
+    }
+
+    /** Number of files. */
+    private final int files;
+    /** Number of lines in each file. */
+    private final int lines;
+    /** Number of commits on master after the first. */
+    private final int depth;
+    /** Number of branches. */
+    private final int branches;
+    /** Source of the contents and of the edits. */
+    private final Random random;
+
+    /** Length of a line, with its newline. */
+    static final int LINE_LENGTH = 64;
+
+    /** Most files in one directory. */
+    static final int FILES_PER_DIR = 100;
+
+    /** One file in this many is edited by each commit. */
+    static final int EDIT_RATIO = 100;
+
+    /** A branch gets one commit for every this many on master. */
+    static final int BRANCH_RATIO = 10;
+
+    /** Number of letters lines are made of. */
+    private static final int LETTERS = 26;
+
+}
@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** A repository built by RepoGenerator in a temporary directory, shared
+ * by the benchmarks of one fork.
+ *
+ * Gitlet finds its repository through the user.dir property, read once
+ * when Main is first loaded, so the property is pointed at the new
+ * directory before anything touches Main, and every fork gets a
+ * repository of its own. Commands' output is discarded. Caches kept in
+ * memory, such as ObjectCache, stay warm between invocations, as they
+ * would in the daemon.
+ * @author Hannah Verdonk */
+@State(Scope.Benchmark)
+public class SyntheticRepo {
+
+    /** Number of files. */
+    @Param({"1000"})
+    public int files;
+
+    /** Size of each file, in bytes. */
+    @Param({"4096"})
+    public int fileSize;
+
+    /** Number of commits on master. */
+    @Param({"100"})
+    public int depth;
+
+    /** Number of branches forked from master. */
+    @Param({"4"})
+    public int branches;
+
+    /** Builds the repository. */
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        dir = Files.createTempDirectory("gitlet-bench");
+        System.setProperty("user.dir", dir.toString());
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        new RepoGenerator(files, fileSize, depth, branches, SEED).generate();
+        master = Refs.get("master");
+    }
+
+    /** Removes the repository. */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        System.setOut(stdout);
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+        }
+    }
+
+    /** The repository's directory. */
+    Path dir;
+
+    /** The head of master once the repository was built. */
+    String master;
+
+    /** Standard output, while commands' output is discarded. */
+    private PrintStream stdout;
+
+    /** Seed of the repository's contents. */
+    static final long SEED = 61;
+
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of commands that change the repository: add, commit and
+ * merge. What each needs to have happened first (an edited file, a
+ * staged one, master back where it was before the last merge) is set
+ * up before every invocation, outside the time measured.
+ * @author Hannah Verdonk */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBench {
+
+    /** Adding one edited file to the index. */
+    @Benchmark
+    public void add(Edited edited) {
+        RepoGenerator.run("add", edited.name);
+    }
+
+    /** Committing one staged edit. */
+    @Benchmark
+    public void commit(Staged staged) {
+        RepoGenerator.run("commit", "benchmark");
+    }
+
+    /** Merging the first branch into master. */
+    @Benchmark
+    public void merge(Unmerged unmerged) {
+        RepoGenerator.run("merge", RepoGenerator.branchName(0));
+    }
+
+    /** A file of the repository, edited before every invocation. */
+    @State(Scope.Thread)
+    public static class Edited {
+        /** Rewrites the first line of a file of REPO. */
+        @Setup(Level.Invocation)
+        public void edit(SyntheticRepo repo) {
+            int i = random.nextInt(repo.files);
+            name = RepoGenerator.name(i);
+            File f = RepoGenerator.file(i);
+            byte[] contents = Utils.readContents(f);
+            for (int j = 0; j < RepoGenerator.LINE_LENGTH - 1; j += 1) {
+                contents[j] = (byte) ('a' + random.nextInt(LETTERS));
+            }
+            Utils.writeContents(f, contents);
+        }
+
+        /** The name of the file edited. */
+        String name;
+
+        /** Chooses the file and its contents. */
+        private final Random random = new Random(SyntheticRepo.SEED);
+
+        /** Number of letters a line is made of. */
+        private static final int LETTERS = 26;
+    }
+
+    /** An edited file, staged before every invocation. */
+    @State(Scope.Thread)
+    public static class Staged {
+        /** Stages the file EDITED edited. */
+        @Setup(Level.Invocation)
+        public void stage(Edited edited) {
+            RepoGenerator.run("add", edited.name);
+        }
+    }
+
+    /** Master, moved back before every invocation to where it was
+     *  before the first branch was merged into it. */
+    @State(Scope.Thread)
+    public static class Unmerged {
+        /** Resets master in REPO to its head as generated. */
+        @Setup(Level.Invocation)
+        public void reset(SyntheticRepo repo) {
+            RepoGenerator.run("reset", repo.master);
+        }
+    }
+
+}